@@ -0,0 +1,143 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Class Benchmark - minimal harness for measuring throughput and allocation of hot paths.
+ * Each benchmark is warmed up first, then measured for a number of iterations,
+ * reporting operations per second, time per operation and bytes allocated per operation
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class Benchmark
+{
+	// Default time of one warm up or measurement iteration in milliseconds
+	private static final int ITERATION_TIME = 500;
+	// Default number of warm up iterations
+	private static final int WARMUP_ITERATIONS = 3;
+	// Default number of measurement iterations
+	private static final int MEASURE_ITERATIONS = 5;
+
+	// Thread bean to get allocated bytes of the current thread
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// Sink to prevent results of measured operations from being optimized away
+	public static volatile long sink;
+
+	/**
+	 * Interface Op - operation to measure
+	 */
+	@FunctionalInterface
+	public interface Op
+	{
+		// Performs the operation once
+		void run() throws Exception;
+	}
+
+	/**
+	 * Class Result - result of measurement
+	 */
+	public static class Result
+	{
+		public final String name;		// Benchmark name
+		public final double opsPerSec;	// Operations per second
+		public final double nsPerOp;	// Nanoseconds per operation
+		public final double bytesPerOp;	// Allocated bytes per operation
+
+		/**
+		 * Class constructor
+		 * @param name Benchmark name
+		 * @param ops Number of measured operations
+		 * @param nanos Measured time in nanoseconds
+		 * @param bytes Allocated bytes during measurement
+		 */
+		Result( String name, long ops, long nanos, long bytes )
+		{
+			this.name = name;
+			opsPerSec = ops * 1e9 / nanos;
+			nsPerOp = (double) nanos / ops;
+			bytesPerOp = (double) bytes / ops;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "%-48s %14.1f ops/s %12.1f ns/op %10.1f B/op",
+								  name, opsPerSec, nsPerOp, bytesPerOp );
+		}
+	}
+
+	/**
+	 * Runs benchmark with default number of iterations and prints the result
+	 * @param name Benchmark name
+	 * @param op Operation to measure
+	 * @return Result of measurement
+	 * @throws Exception
+	 */
+	public static Result run( String name, Op op ) throws Exception
+	{
+		return run( name, WARMUP_ITERATIONS, MEASURE_ITERATIONS, ITERATION_TIME, op );
+	}
+
+	/**
+	 * Runs benchmark and prints the result
+	 * @param name Benchmark name
+	 * @param warmup Number of warm up iterations
+	 * @param iterations Number of measurement iterations
+	 * @param iterationTime Time of one iteration in milliseconds
+	 * @param op Operation to measure
+	 * @return Result of measurement
+	 * @throws Exception
+	 */
+	public static Result run( String name, int warmup, int iterations, int iterationTime, Op op ) throws Exception
+	{
+		// Warm up
+		for ( int i = 0; i < warmup; i++ )
+			iterate( op, iterationTime );
+
+		long threadID = Thread.currentThread().getId();
+		long ops = 0;
+		long startBytes = THREADS.getThreadAllocatedBytes( threadID );
+		long startTime = System.nanoTime();
+
+		// Measure
+		for ( int i = 0; i < iterations; i++ )
+			ops += iterate( op, iterationTime );
+
+		long nanos = System.nanoTime() - startTime;
+		long bytes = THREADS.getThreadAllocatedBytes( threadID ) - startBytes;
+
+		Result res = new Result( name, ops, nanos, bytes );
+		System.out.println( res );
+
+		return res;
+	}
+
+	/**
+	 * Runs operation repeatedly for specified time
+	 * @param op Operation to run
+	 * @param iterationTime Time in milliseconds
+	 * @return Number of performed operations
+	 * @throws Exception
+	 */
+	private static long iterate( Op op, int iterationTime ) throws Exception
+	{
+		long deadline = System.nanoTime() + iterationTime * 1_000_000L;
+		long ops = 0;
+
+		// Check time only every 64 operations to keep timing overhead low
+		do
+		{
+			for ( int i = 0; i < 64; i++ )
+				op.run();
+
+			ops += 64;
+		}
+		while ( System.nanoTime() < deadline );
+
+		return ops;
+	}
+}
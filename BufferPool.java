@@ -0,0 +1,75 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Class BufferPool - pool of reusable direct byte buffers for datagram exchange.
+ * Buffers are allocated only when the pool is empty, so in steady state
+ * acquiring and releasing buffers does not allocate
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class BufferPool
+{
+	private final int bufferSize;	// Capacity of each buffer
+	private ByteBuffer[] free;		// Stack of free buffers
+	private int numFree;			// Number of free buffers in the stack
+
+	/**
+	 * Class constructor
+	 * @param bufferSize Capacity of each buffer in bytes
+	 * @param preallocate Number of buffers to allocate up front
+	 */
+	public BufferPool( int bufferSize, int preallocate )
+	{
+		this.bufferSize = bufferSize;
+		free = new ByteBuffer[ Math.max(4, preallocate) ];
+
+		while ( numFree < preallocate )
+			free[numFree++] = ByteBuffer.allocateDirect( bufferSize );
+	}
+
+	/**
+	 * Gets a cleared buffer from the pool
+	 * @return Buffer ready to be written into
+	 */
+	public ByteBuffer acquire()
+	{
+		// If there are no free buffers - allocate a new one
+		if ( numFree == 0 )
+			return ByteBuffer.allocateDirect( bufferSize );
+
+		ByteBuffer buf = free[--numFree];
+		free[numFree] = null;
+
+		return buf.clear();
+	}
+
+	/**
+	 * Returns buffer to the pool
+	 * @param buf Buffer previously acquired from this pool
+	 */
+	public void release( ByteBuffer buf )
+	{
+		if ( buf.capacity() != bufferSize )
+			throw new IllegalArgumentException();
+
+		// Grow the stack if it's full
+		if ( numFree == free.length )
+			free = Arrays.copyOf( free, free.length * 2 );
+
+		free[numFree++] = buf;
+	}
+
+	/**
+	 * Gets capacity of buffers in this pool
+	 * @return Capacity in bytes
+	 */
+	public int bufferSize()
+	{
+		return bufferSize;
+	}
+}
@@ -0,0 +1,414 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Class ClientBenchmark - measures hot paths of Tanks client: the hand-off of states
+ * between sprites and the network layer, movement of sprites, their drawing
+ * into an offscreen image and detection of their collisions. Runs without display
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class ClientBenchmark
+{
+	// Numbers of remote players in the state hand-off and of those moving in every snapshot
+	private static final int[][] REMOTE_COUNTS = { {1, 1}, {10, 10}, {100, 100}, {1000, 10}, {1000, 1000} };
+
+	// Sequence number of the next snapshot, the client's known world is shared by all runs
+	private static int nextSeq = 1;
+	// Numbers of sprites to move and draw
+	private static final int[] SPRITE_COUNTS = { 100, 1000, 10000 };
+	// Numbers of tanks on screen in a frame
+	private static final int[] FRAME_COUNTS = { 1, 100, 1000 };
+	// Numbers of tanks tested for collisions
+	private static final int[] COLLISION_COUNTS = { 100, 300, 1000, 3000 };
+	// Colors of tanks in a frame
+	private static final Color[] PALETTE = { Color.BLACK, Color.RED, Color.GREEN, Color.BLUE,
+											 Color.ORANGE, Color.MAGENTA, Color.CYAN, Color.GRAY };
+
+	/**
+	 * Starts the benchmark
+	 * @param args Command line arguments - not used
+	 * @throws Exception
+	 */
+	public static void main( String[] args ) throws Exception
+	{
+		System.setProperty( "java.awt.headless", "true" );
+
+		for ( int[] counts : REMOTE_COUNTS )
+			stateHandOff( counts[0], counts[1] );
+
+		for ( int numSprites : SPRITE_COUNTS )
+			update( numSprites );
+
+		for ( int numSprites : SPRITE_COUNTS )
+			remoteUpdate( numSprites );
+
+		for ( int numSprites : SPRITE_COUNTS )
+			draw( numSprites );
+
+		for ( int numTanks : FRAME_COUNTS )
+			frame( numTanks );
+
+		for ( int numTanks : COLLISION_COUNTS )
+			collisions( numTanks );
+	}
+
+	/**
+	 * Benchmarks hand-off of states in one exchange: local tank's state is encoded into
+	 * STATE message, a snapshot chunk with moves of remote players is applied to their
+	 * states and published by the network thread, and remote tanks capture them
+	 * @param numRemote Number of remote players
+	 * @param numMoving Number of remote players moving in every snapshot
+	 * @throws Exception
+	 */
+	private static void stateHandOff( int numRemote, int numMoving ) throws Exception
+	{
+		TankImpl tank = makeTanks( 1 )[0];
+		PlayerStates states = makeStates( numRemote );
+		RemoteTanks remote = makeRemoteTanks( states );
+		ByteBuffer out = ByteBuffer.allocate( Protocol.MAX_STATE_SIZE );
+		ByteBuffer in = ByteBuffer.allocate( Protocol.SNAPSHOT_HEADER_SIZE + numRemote * Protocol.MAX_RECORD_SIZE );
+
+		// Full snapshot binds slots of remote players
+		int[] seq = { nextSeq++ };
+		writeChunk( in, seq[0], 0, seq[0], states, numRemote, Protocol.ALL_FIELDS );
+		ClientExchange.applyChunk( in );
+		ClientNetwork.publish();
+
+		// Every next snapshot moves some of them
+		seq[0] = nextSeq++;
+		writeChunk( in, seq[0], seq[0] - 1, seq[0], states, numMoving, Protocol.MOVEMENT_FIELDS );
+
+		Benchmark.run( "state hand-off, remote players=" + numRemote + ", moving=" + numMoving, () ->
+		{
+			// Local tank's state into STATE message
+			ClientExchange.encodeMsg( out.clear(), tank.x, tank.y, tank.r, tank.d, tank.s, 1, 1, 0, 0, null, 0 );
+
+			// Remote players' states from the network layer to the sprites
+			in.putInt( 2, seq[0] ).putInt( 6, seq[0] - 1 ).putLong( Protocol.SNAPSHOT_HEADER_SIZE - 8, seq[0] );
+			in.position( 0 );
+			ClientExchange.applyChunk( in );
+			ClientNetwork.publish();
+			seq[0] = nextSeq++;
+
+			remote.apply( ClientNetwork.world(), 1 );
+		} );
+	}
+
+	/**
+	 * Benchmarks movement of remote tanks in one frame, every one interpolated
+	 * between the two states received around the time it's drawn at, and their drawing
+	 * @param numSprites Number of remote tanks
+	 * @throws Exception
+	 */
+	private static void remoteUpdate( int numSprites ) throws Exception
+	{
+		PlayerStates states = makeStates( numSprites );
+		RemoteTanks remote = makeRemoteTanks( states );
+		ByteBuffer in = ByteBuffer.allocate( Protocol.SNAPSHOT_HEADER_SIZE + numSprites * Protocol.MAX_RECORD_SIZE );
+		long now = Protocol.time();
+
+		// States are received long before and long after the time tanks are drawn at during the run
+		int seq = nextSeq++;
+		writeChunk( in, seq, 0, now - TanksComponent.interpDelay - 1000, states, numSprites, Protocol.ALL_FIELDS );
+		receive( in, remote );
+
+		for ( int i = 0; i < numSprites; i++ )
+			states.x[i] = (states.x[i] + 100) % TanksFrame.WIDTH;
+
+		seq = nextSeq++;
+		writeChunk( in, seq, seq - 1, now + 3_600_000, states, numSprites, Protocol.MOVEMENT_FIELDS );
+		receive( in, remote );
+
+		Benchmark.run( "remote update, tanks=" + numSprites, () ->
+		{
+			remote.update( Protocol.time() - ClientNetwork.world().clockOffset - TanksComponent.interpDelay );
+		} );
+
+		BufferedImage image = new BufferedImage( TanksFrame.WIDTH, TanksFrame.HEIGHT, BufferedImage.TYPE_INT_RGB );
+		Graphics2D g = image.createGraphics();
+
+		Benchmark.run( "remote draw, tanks=" + numSprites, () ->
+		{
+			g.setColor( Color.WHITE );
+			g.fillRect( 0, 0, TanksFrame.WIDTH, TanksFrame.HEIGHT );
+
+			remote.draw( g, 1 );
+		} );
+
+		g.dispose();
+	}
+
+	/**
+	 * Applies snapshot, publishes it and lets remote tanks capture their states
+	 * @param in Buffer with snapshot
+	 * @param remote Remote tanks
+	 */
+	private static void receive( ByteBuffer in, RemoteTanks remote )
+	{
+		ClientExchange.applyChunk( in );
+		ClientNetwork.publish();
+
+		remote.apply( ClientNetwork.world(), 1 );
+	}
+
+	/**
+	 * Writes snapshot of one chunk with records of all players
+	 * @param buf Buffer to write into, ready to be read after that
+	 * @param seq Sequence number of the snapshot
+	 * @param baseline Sequence number of the snapshot it's delta against, 0 if it is full
+	 * @param time Server's time of the snapshot
+	 * @param states Players' states
+	 * @param numStates Number of players to write, from slot 0
+	 * @param mask Fields to write
+	 */
+	private static void writeChunk( ByteBuffer buf, int seq, int baseline, long time, PlayerStates states, int numStates, int mask )
+	{
+		buf.clear();
+		buf.put( Protocol.MSG_SNAPSHOT ).put( Protocol.VERSION ).putInt( seq ).putInt( baseline )
+		   .put( (byte) 0 ).put( (byte) 0 ).put( (byte) 1 )
+		   .putShort( (short) 0 ).putShort( (short) numStates ).putLong( time );
+
+		for ( int i = 0; i < numStates; i++ )
+			WorldSnapshot.writeRecord( buf, states, i, mask );
+
+		buf.putShort( Protocol.SNAPSHOT_LENGTH_OFFSET, (short) buf.position() );
+		buf.flip();
+	}
+
+	/**
+	 * Benchmarks movement of all sprites in one frame
+	 * @param numSprites Number of sprites
+	 * @throws Exception
+	 */
+	private static void update( int numSprites ) throws Exception
+	{
+		TankImpl[] tanks = makeTanks( numSprites );
+
+		Benchmark.run( "sprite update, sprites=" + numSprites, () ->
+		{
+			for ( TankImpl tank : tanks )
+				tank.update();
+		} );
+	}
+
+	/**
+	 * Benchmarks drawing of all sprites into an offscreen image in one frame
+	 * @param numSprites Number of sprites
+	 * @throws Exception
+	 */
+	private static void draw( int numSprites ) throws Exception
+	{
+		TankImpl[] tanks = makeTanks( numSprites );
+		BufferedImage image = new BufferedImage( TanksFrame.WIDTH, TanksFrame.HEIGHT, BufferedImage.TYPE_INT_RGB );
+		Graphics2D g = image.createGraphics();
+
+		Benchmark.run( "sprite draw, sprites=" + numSprites, () ->
+		{
+			g.setColor( Color.WHITE );
+			g.fillRect( 0, 0, TanksFrame.WIDTH, TanksFrame.HEIGHT );
+
+			for ( TankImpl tank : tanks )
+				tank.draw( g );
+		} );
+
+		g.dispose();
+	}
+
+	/**
+	 * Benchmarks drawing of a frame with tanks in different colors and rotations: by images
+	 * of the sprite atlas, as sprites draw, only in the area one moving tank changed, and by
+	 * filling the tank's shape through a transform
+	 * @param numTanks Number of tanks
+	 * @throws Exception
+	 */
+	private static void frame( int numTanks ) throws Exception
+	{
+		Random random = new Random( 1 );
+		TankImpl[] tanks = new TankImpl[ numTanks ];
+
+		// Every tank takes its color from the frame when created
+		for ( int i = 0; i < numTanks; i++ )
+		{
+			TanksFrame.color = PALETTE[ i % PALETTE.length ];
+			tanks[i] = new TankImpl( null, random.nextInt(TanksFrame.WIDTH - 20), random.nextInt(TanksFrame.HEIGHT - 20), i + 1 );
+			tanks[i].r = (float) (random.nextFloat() * 2 * Math.PI);
+		}
+
+		TanksFrame.color = null;
+
+		BufferedImage image = new BufferedImage( TanksFrame.WIDTH, TanksFrame.HEIGHT, BufferedImage.TYPE_INT_RGB );
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+		Shape shape = TankImpl.makeTankShape();
+
+		Benchmark.run( "frame by atlas, tanks=" + numTanks, () ->
+		{
+			g.setColor( Color.WHITE );
+			g.fillRect( 0, 0, TanksFrame.WIDTH, TanksFrame.HEIGHT );
+
+			for ( TankImpl tank : tanks )
+				tank.draw( g );
+		} );
+
+		// Repaint of the area a single moving tank changed, as the component does in a tick
+		Rectangle dirty = new Rectangle();
+		tanks[0].addDirty( dirty );
+		TankImpl.ATLAS.addBounds( dirty, tanks[0].x + 1, tanks[0].y + 1 );
+
+		Benchmark.run( "dirty repaint of one tank, tanks=" + numTanks, () ->
+		{
+			g.setClip( dirty );
+			g.setColor( Color.WHITE );
+			g.fillRect( dirty.x, dirty.y, dirty.width, dirty.height );
+
+			for ( TankImpl tank : tanks )
+				tank.draw( g );
+
+			g.setClip( null );
+		} );
+
+		Benchmark.run( "frame by shape, tanks=" + numTanks, () ->
+		{
+			g.setColor( Color.WHITE );
+			g.fillRect( 0, 0, TanksFrame.WIDTH, TanksFrame.HEIGHT );
+
+			for ( int i = 0; i < numTanks; i++ )
+			{
+				AffineTransform saveAT = g.getTransform();
+
+				g.setColor( new Color( PALETTE[ i % PALETTE.length ].getRGB() ) );
+				g.translate( tanks[i].x, tanks[i].y );
+				g.rotate( -tanks[i].r, 10, 10 );
+				g.fill( shape );
+				g.setTransform( saveAT );
+			}
+		} );
+
+		g.dispose();
+	}
+
+	/**
+	 * Benchmarks detection of overlapping tanks in one frame, all of them moving, through
+	 * the grid as the game does and by testing every pair. Tanks are spread over an arena
+	 * growing with their number, so every tank has as many neighbours as in the game's arena
+	 * with 100 tanks
+	 * @param numTanks Number of tanks
+	 * @throws Exception
+	 */
+	private static void collisions( int numTanks ) throws Exception
+	{
+		Random random = new Random( 1 );
+		float scale = (float) Math.sqrt( numTanks / 100.0 );
+		float[] x = new float[numTanks], y = new float[numTanks], r = new float[numTanks];
+
+		for ( int i = 0; i < numTanks; i++ )
+		{
+			x[i] = random.nextFloat() * TanksFrame.WIDTH * scale;
+			y[i] = random.nextFloat() * TanksFrame.HEIGHT * scale;
+			r[i] = (float) (random.nextFloat() * 2 * Math.PI);
+		}
+
+		TankCollisions collisions = new TankCollisions();
+
+		for ( int i = 0; i < numTanks; i++ )
+			collisions.add( x[i], y[i], r[i], true );
+
+		int numPairs = collisions.detect();
+
+		Benchmark.run( "collisions by grid, tanks=" + numTanks + ", pairs=" + numPairs, () ->
+		{
+			collisions.clear();
+
+			for ( int i = 0; i < numTanks; i++ )
+				collisions.add( x[i], y[i], r[i], true );
+
+			Benchmark.sink += collisions.detect();
+		} );
+
+		Benchmark.run( "collisions by all pairs, tanks=" + numTanks + ", pairs=" + collisions.detectAllPairs(), () ->
+		{
+			collisions.clear();
+
+			for ( int i = 0; i < numTanks; i++ )
+				collisions.add( x[i], y[i], r[i], true );
+
+			Benchmark.sink += collisions.detectAllPairs();
+		} );
+	}
+
+	/**
+	 * Creates random states of remote players, with IDs and slots in order and colors of the palette
+	 * @param numStates Number of players
+	 * @return States in slots from 0 to numStates - 1
+	 */
+	private static PlayerStates makeStates( int numStates )
+	{
+		Random random = new Random( 1 );
+		PlayerStates states = new PlayerStates();
+
+		for ( int i = 0; i < numStates; i++ )
+		{
+			int slot = states.add( i + 2 );
+
+			states.x[slot] = random.nextFloat() * TanksFrame.WIDTH;
+			states.y[slot] = random.nextFloat() * TanksFrame.HEIGHT;
+			states.r[slot] = random.nextFloat();
+			states.d[slot] = random.nextFloat();
+			states.s[slot] = random.nextFloat();
+			states.c[slot] = PALETTE[ i % PALETTE.length ].getRGB();
+		}
+
+		return states;
+	}
+
+	/**
+	 * Creates tanks of remote players in their slots
+	 * @param states States of remote players
+	 * @return Remote tanks
+	 */
+	private static RemoteTanks makeRemoteTanks( PlayerStates states )
+	{
+		RemoteTanks tanks = new RemoteTanks();
+
+		for ( int i = 0; i < states.size(); i++ )
+			tanks.add( states.slotAt(i), states.id[ states.slotAt(i) ] );
+
+		return tanks;
+	}
+
+	/**
+	 * Creates tanks at random places in the arena, steered in random directions
+	 * @param numTanks Number of tanks
+	 * @return Array of tanks
+	 */
+	private static TankImpl[] makeTanks( int numTanks )
+	{
+		Rectangle2D bounds = new Rectangle2D.Float( 0, 0, TanksFrame.WIDTH, TanksFrame.HEIGHT );
+		Random random = new Random( 1 );
+		TankImpl[] tanks = new TankImpl[ numTanks ];
+
+		for ( int i = 0; i < numTanks; i++ )
+		{
+			tanks[i] = new TankImpl( bounds, random.nextInt(TanksFrame.WIDTH - 20),
+									 random.nextInt(TanksFrame.HEIGHT - 20), i + 1 );
+
+			tanks[i].steer( Sprite.Direction.values()[ random.nextInt(Sprite.Direction.values().length) ],
+							Sprite.SpeedRel.FORWARD );
+		}
+
+		return tanks;
+	}
+}
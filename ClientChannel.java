@@ -0,0 +1,175 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Class ClientChannel - network endpoint of the client, open for the whole session.
+ * Server's address is resolved once and the channel is connected to it, so every
+ * message goes out of the same local port and the server can push snapshots to it
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class ClientChannel
+{
+	// Endpoint of the session, opened by the first exchange
+	private static ClientChannel session;
+
+	private final InetSocketAddress server;	// Resolved address of Tanks Server
+	private final DatagramChannel channel;	// Channel connected to the server
+	private final Selector selector;		// Selector to wait for datagrams with timeout
+
+	/**
+	 * Gets endpoint of the session, opening it if it's not open yet
+	 * @return Endpoint connected to Tanks Server specified in command line
+	 * @throws IOException
+	 */
+	public static synchronized ClientChannel session() throws IOException
+	{
+		if ( session == null )
+			session = new ClientChannel( TanksFrame.host, TanksFrame.port );
+
+		return session;
+	}
+
+	/**
+	 * Closes endpoint of the session if it is open
+	 */
+	public static synchronized void closeSession()
+	{
+		if ( session != null )
+			session.close();
+
+		session = null;
+	}
+
+	/**
+	 * Class constructor
+	 * @param host Tanks Server host
+	 * @param port Tanks Server port
+	 * @throws IOException
+	 */
+	public ClientChannel( String host, int port ) throws IOException
+	{
+		server = new InetSocketAddress( host, port );
+
+		if ( server.isUnresolved() )
+			throw new UnknownHostException( host );
+
+		channel = DatagramChannel.open();
+
+		try
+		{
+			channel.connect( server );
+			channel.configureBlocking( false );
+
+			selector = Selector.open();
+			channel.register( selector, SelectionKey.OP_READ );
+		}
+		catch ( IOException e )
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets address of Tanks Server
+	 * @return Resolved address
+	 */
+	public InetSocketAddress getServer()
+	{
+		return server;
+	}
+
+	/**
+	 * Sends datagram to Tanks Server
+	 * @param buf Buffer with the datagram between its position and limit
+	 * @return Number of sent bytes, 0 if the datagram was dropped
+	 * @throws IOException
+	 */
+	public int send( ByteBuffer buf ) throws IOException
+	{
+		try
+		{
+			return channel.write( buf );
+		}
+		catch ( PortUnreachableException e )
+		{
+			// Server is not started yet - the datagram is lost as any other
+			return 0;
+		}
+	}
+
+	/**
+	 * Receives datagram from Tanks Server, waiting for it no longer than specified time
+	 * @param buf Buffer to receive into, cleared before receiving
+	 * @param timeout Longest time to wait in milliseconds, 0 to not wait
+	 * @return Number of received bytes or -1 if nothing came in time or the wait was woken up
+	 * @throws IOException
+	 */
+	public int receive( ByteBuffer buf, long timeout ) throws IOException
+	{
+		long deadline = System.currentTimeMillis() + timeout;
+
+		while ( true )
+		{
+			buf.clear();
+
+			try
+			{
+				// Datagram that does not fit into the buffer is cut as with DatagramSocket
+				if ( channel.receive( buf ) != null )
+				{
+					buf.flip();
+					return buf.limit();
+				}
+			}
+			catch ( PortUnreachableException e )
+			{
+				// Server is not started yet - there is nothing to receive
+			}
+
+			long left = deadline - System.currentTimeMillis();
+
+			if ( left <= 0 )
+				return -1;
+
+			// Woken up or timed out - the caller checks what is due
+			if ( selector.select( left ) == 0 )
+				return -1;
+
+			selector.selectedKeys().clear();
+		}
+	}
+
+	/**
+	 * Makes the thread waiting in receive return at once
+	 */
+	public void wakeup()
+	{
+		selector.wakeup();
+	}
+
+	/**
+	 * Closes the channel
+	 */
+	public void close()
+	{
+		try
+		{
+			selector.close();
+			channel.close();
+		}
+		catch ( IOException e )
+		{ }
+	}
+}
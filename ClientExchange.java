@@ -2,183 +2,366 @@
  *  Program Name : Tanks
  */
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.concurrent.Callable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.logging.Logger;
 
 /**
- * Class ClientExchange - exchanges messages with Tanks Server
+ * Class ClientExchange - client's side of the exchange with Tanks Server: encodes
+ * local tank's state and applies received snapshots to known players' states.
+ * It is used by the network thread only
  * @author Peter Cross
  * @version April 5, 2017
  */
-public class ClientExchange implements Callable<String>
+public class ClientExchange
 {
 	// Logger object to log event messages
 	private static final Logger LOG = Logger.getLogger( ClientExchange.class.getName() );
 	
-    private final String host = TanksFrame.host;// Tank Server host
-    private final int port = TanksFrame.port;	// Tank Server port
-    
-    private String toSendMsg;	// Message to send to Tanks Server
-	private String receivedMsg;	// Received from remote player message
+	// Players' states as known from snapshots received so far
+	private static final PlayerTable<RemoteState> world = new PlayerTable<>();
+	// Players' states by slots the server assigned to them
+	private static RemoteState[] slots = new RemoteState[64];
+	// Slots whose states changed since the last published view
+	private static final BitSet changed = new BitSet();
+	// Sequence number of the last completely received snapshot
+	private static int lastSeq;
+	// Server's time of the last applied chunk
+	private static long lastTime;
+	// If the server moves tanks by players' inputs
+	private static boolean authoritative;
+	// Slot the server assigned to the current player, NO_SLOT until it tells it
+	private static int ownSlot = Protocol.NO_SLOT;
+	
+	// Sequence number of the snapshot whose chunks are being received
+	private static int chunksSeq = -1;
+	// Chunks of that snapshot received so far
+	private static final BitSet chunksReceived = new BitSet( Protocol.MAX_CHUNKS );
+	// Number of its chunks not received yet
+	private static int chunksPending;
+	// If some of its chunks were cut by the server
+	private static boolean chunksPartial;
 	
 	/**
-	 * Default class constructor
+	 * Gets server's time of the last applied chunk
+	 * @return Time in milliseconds by server's clock
 	 */
-	public ClientExchange()
+	static long lastTime()
 	{
-		this( "" );
+		return lastTime;
 	}
 	
 	/**
-	 * Class constructor
-	 * @param msg Message to send to Tanks Server
+	 * Gets slot the server assigned to the current player
+	 * @return Slot or NO_SLOT if the server has not told it yet
 	 */
-	public ClientExchange( String msg )
+	static int ownSlot()
 	{
-		toSendMsg = msg;
-		receivedMsg = "";
+		return ownSlot;
 	}
 	
 	/**
-	 * Gets invoke to initiate message exchange with Tanks Server
+	 * Applies event the server sent reliably
+	 * @param type Event type
+	 * @param value Event's value
 	 */
-	@Override
-    public String call() throws IOException, UnknownHostException 
-    {
-    	receivedMsg = "";
-			  // Create datagram socket object
-    	try ( final DatagramSocket datagramSocket = new DatagramSocket() ) 
-        {
-            // If there is a message to send
-    		if ( !toSendMsg.isEmpty() )
-    			// Invoke method to send the message and receive a reply from Tanks Server
-            	receivedMsg = sendMsg( datagramSocket );
-		}
-    	
-    	// Return received from Tanks Server message
-    	return receivedMsg;
-    }
-    
+	static void applyEvent( int type, int value )
+	{
+		if ( type == Protocol.EVENT_JOINED )
+			ownSlot = value;
+		else
+			LOG.fine( "Unknown event from Tanks Server: " + type );
+	}
+	
 	/**
-	 * Sends message to Tanks Server
-	 * @param socket Socket to send message through
-	 * @return Received reply from the server
-	 * @throws IOException
+	 * Starts a new session after the server asked the player to join again: forgets the slot
+	 * and snapshots of the old session, whose sequence numbers a restarted server does not
+	 * continue, so the player joins with its color and takes the next full snapshot
 	 */
-    private String sendMsg( DatagramSocket socket ) throws IOException
+	static void rejoin()
 	{
-		// Create output stream
-    	ByteArrayOutputStream outputStream = new ByteArrayOutputStream( toSendMsg.length() );
+		lastSeq = 0;
+		lastTime = 0;
+		ownSlot = Protocol.NO_SLOT;
+		chunksSeq = -1;
+		chunksReceived.clear();
+		chunksPending = 0;
+		chunksPartial = false;
 		
-		// Get current player ID from the constant in another class
-    	long playerID = TanksComponent.playerID;
-		
-		// Convert message to send into String array
-    	String[] str = toSendMsg.split( " " );
-		
-		// Convert data in message to send into primitive types
-    	long timestamp = Long.parseLong( str[0] );
-		float x = Float.parseFloat( str[1] );
-		float y = Float.parseFloat( str[2] );
-		float r = Float.parseFloat( str[3] );
-		float d = Float.parseFloat( str[4] );
-		float s = Float.parseFloat( str[5] );
-		// Get current player's tank color as RGB number
-		int c = TanksFrame.color.getRGB();
-		
-			  // Create data output stream
-		try ( DataOutputStream dataOutputStream = new DataOutputStream(outputStream) )
-		{
-			// Write data to send into output stream
-			dataOutputStream.writeLong( playerID );
-			dataOutputStream.writeLong( timestamp );
-			dataOutputStream.writeFloat( x );
-			dataOutputStream.writeFloat( y );
-			dataOutputStream.writeFloat( r );
-			dataOutputStream.writeFloat( d );
-			dataOutputStream.writeFloat( s );
-			dataOutputStream.writeInt( c );
-			dataOutputStream.close();
-		}
-		
-		// Convert output stream into array
-		byte[] buffer = outputStream.toByteArray();
-		
-		// Create datagram packet to send
-		DatagramPacket packet = new DatagramPacket( buffer, 
-													buffer.length, 
-													InetAddress.getByName(host), 
-													port );
-		// Send packet to Tanks Server
-		socket.send( packet );
-		toSendMsg = "";
-		
-		// If sent message was marked with non-zero timestamp
-		if ( timestamp != 0 )
-			// Invoke method to receive reply from the Server and return it
-			return receiveMsg( socket );
-		// If it's zero timestamp message - special message to Tanks Server
-		else
-			return "";
+		// Known players stay until the full snapshot, which removes those missing in it
+		for ( int i = 0; i < world.size(); i++ )
+			world.valueAt(i).seq = 0;
 	}
 	
-    /**
-     * Receives message from Tanks Server
-     * @param socket Socket through which to receive a message
-     * @return Received message
-     * @throws IOException
-     */
-	private String receiveMsg( DatagramSocket socket ) throws IOException
+	/**
+	 * Checks if the server moves tanks by players' inputs
+	 * @return true if the last applied chunk came from server with authoritative movement
+	 */
+	static boolean authoritative()
 	{
-		// Buffer array for receiving a message
-		byte[] buffer = new byte[500];
-		
-		// Create datagram packet with specified buffer
-		DatagramPacket packet = new DatagramPacket( buffer, buffer.length );
+		return authoritative;
+	}
+	
+	/**
+	 * Gets sequence number of the last completely received snapshot
+	 * @return Sequence number to acknowledge
+	 */
+	static int lastSeq()
+	{
+		return lastSeq;
+	}
+	
+	/**
+	 * Encodes local tank's state into STATE message
+	 * @param out Buffer to write into
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 * @param playerID Current player's ID
+	 * @param ack Sequence number of the last completely received snapshot
+	 * @param c Current player's tank color as RGB number
+	 * @param firstInput Sequence number of the first input
+	 * @param inputs Inputs not acknowledged by the server
+	 * @param numInputs Number of inputs, 0 to send none
+	 */
+	static void encodeMsg( ByteBuffer out, float x, float y, float r, float d, float s,
+						   long playerID, int ack, int c, int firstInput, byte[] inputs, int numInputs )
+	{
+		// Until the first snapshot is acknowledged the player joins with its color
+		int flags = ack == 0 ? Protocol.STATE_JOIN : 0;
 		
-		// Receive a message from the server
-		socket.receive( packet );
+		if ( numInputs > 0 )
+			flags |= Protocol.STATE_INPUTS;
 		
-		// Create input stream for received packet
-		ByteArrayInputStream inputStream = new ByteArrayInputStream( packet.getData() );
+		Protocol.writeState( out, flags, playerID, ownSlot, ack, x, y, r, d, s, c );
 		
-		String res = "";
+		if ( numInputs > 0 )
+			Protocol.writeInputs( out, firstInput, inputs, numInputs );
+	}
+	
+	/**
+	 * Applies received chunk of snapshot to known players' states
+	 * @param in Buffer with received chunk
+	 * @return Number of players' records applied
+	 */
+	static int applyChunk( ByteBuffer in )
+	{
+		int res = 0;
 		
-			  // Create data input stream
-		try ( DataInputStream dataInputStream = new DataInputStream( inputStream ) )
+		try
 		{
-			// Read data from data input stream
-			int numPlayers = dataInputStream.readInt();
+			if ( in.get() != Protocol.MSG_SNAPSHOT || in.get() != Protocol.VERSION )
+				return res;
+			
+			// Read chunk header
+			int seq = in.getInt();
+			int baseline = in.getInt();
+			int flags = in.get();
+			int chunk = in.get() & 0xFF;
+			int numChunks = in.get() & 0xFF;
+			in.getShort();
+			int numPlayers = in.getShort();
+			long time = in.getLong();
+			
+			// Ignore snapshots older than already applied and deltas against unknown baseline
+			if ( seq < lastSeq || seq < chunksSeq || baseline > lastSeq )
+				return res;
+			
+			// If it's the first chunk of a newer snapshot - start collecting its chunks
+			if ( seq != chunksSeq )
+			{
+				chunksSeq = seq;
+				chunksReceived.clear();
+				chunksPending = numChunks;
+				chunksPartial = false;
+			}
+			
+			// Ignore duplicated chunks
+			if ( chunksReceived.get( chunk ) )
+				return res;
+			
+			chunksReceived.set( chunk );
+			lastTime = Math.max( lastTime, time );
+			chunksPending--;
+			chunksPartial |= (flags & Protocol.FLAG_PARTIAL) != 0;
+			authoritative = (flags & Protocol.FLAG_AUTHORITATIVE) != 0;
 			
 			while ( numPlayers-- > 0 )
 			{
-				long playerID = dataInputStream.readLong();
-				long timestamp = dataInputStream.readLong();
-				float x = dataInputStream.readFloat();
-				float y = dataInputStream.readFloat();
-				float r = dataInputStream.readFloat();
-				float d = dataInputStream.readFloat();
-				float s = dataInputStream.readFloat();
-				int c = dataInputStream.readInt();
+				int slot = in.getShort() & 0xFFFF;
+				int mask = in.get() & 0xFF;
+				
+				// If player is gone - forget its state
+				if ( (mask & Protocol.REMOVED) != 0 )
+				{
+					long playerID = in.getLong();
+					
+					if ( world.remove( playerID ) != null )
+					{
+						// Slot may already be bound to a player who took it
+						if ( slots[slot] != null && slots[slot].id == playerID )
+						{
+							slots[slot] = null;
+							changed.set( slot );
+						}
+						
+						res++;
+					}
+					
+					continue;
+				}
 				
-				// Pack data into string
-				res += "" + playerID + " " + timestamp + " " + x + " " + y + " " + r + " " + d + " " + s + " " + c + "\n";
+				RemoteState st;
 				
-				if ( playerID != TanksComponent.playerID && !TanksComponent.isTankInList( playerID ) )
-					TanksFrame.comp.addRemoteTank( playerID );
+				// If record has color - it binds the slot to player's ID
+				if ( (mask & Protocol.FIELD_C) != 0 )
+				{
+					long playerID = in.getLong();
+					st = world.get( playerID );
+					
+					if ( st == null )
+					{
+						st = new RemoteState();
+						st.id = playerID;
+						world.put( playerID, st );
+					}
+					
+					bind( slot, st );
+				}
+				else
+					st = slots[slot];
+				
+				// If player's slot is not known yet - the record can't be applied
+				if ( st == null )
+				{
+					skipFields( in, mask );
+					continue;
+				}
+				
+				readFields( in, mask, st );
+				
+				if ( (mask & Protocol.MOVEMENT_FIELDS) != 0 )
+					st.timestamp = time;
+				
+				st.seq = seq;
+				changed.set( slot );
+				res++;
 			}
 			
-			// Return reply string
-			return res;
-		}		
+			// If all chunks of the snapshot are received and none was cut
+			if ( chunksPending == 0 && !chunksPartial )
+			{
+				// Players missing in a complete full snapshot are gone
+				if ( baseline == 0 )
+					for ( int i = world.size() - 1; i >= 0; i-- )
+						if ( world.valueAt(i).seq != seq )
+						{
+							res++;
+							
+							if ( slots[world.valueAt(i).slot] == world.valueAt(i) )
+							{
+								slots[world.valueAt(i).slot] = null;
+								changed.set( world.valueAt(i).slot );
+							}
+							
+							world.remove( world.keyAt(i) );
+						}
+				
+				lastSeq = seq;
+			}
+		}
+		catch ( BufferUnderflowException e )
+		{
+			// Damaged chunk - the snapshot must not be acknowledged
+			chunksPartial = true;
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Copies players' states known so far into view for the game, with slots changed since
+	 * the previous view
+	 * @param view View to copy into
+	 * @param version Number of views published before this one
+	 * @param clockOffset Local time minus server's time in milliseconds
+	 */
+	static void copyWorld( WorldView view, int version, long clockOffset )
+	{
+		view.copy( slots, version, clockOffset, authoritative, ownSlot, changed );
+		changed.clear();
+	}
+	
+	/**
+	 * Binds slot to player's state
+	 * @param slot Slot of the player
+	 * @param st Player's state
+	 */
+	private static void bind( int slot, RemoteState st )
+	{
+		if ( slot >= slots.length )
+			slots = Arrays.copyOf( slots, Math.max(slot + 1, slots.length * 2) );
+		
+		// If player was known by another slot - free it
+		if ( st.slot != slot && st.slot < slots.length && slots[st.slot] == st )
+		{
+			slots[st.slot] = null;
+			changed.set( st.slot );
+		}
+		
+		slots[slot] = st;
+		st.slot = slot;
+	}
+	
+	/**
+	 * Reads fields present in the record into player's state
+	 * @param in Buffer positioned at the fields
+	 * @param mask Fields present in the record
+	 * @param st Player's state
+	 */
+	static void readFields( ByteBuffer in, int mask, RemoteState st )
+	{
+		if ( (mask & Protocol.FIELD_X) != 0 ) st.x = Protocol.position( in.getShort() );
+		if ( (mask & Protocol.FIELD_Y) != 0 ) st.y = Protocol.position( in.getShort() );
+		if ( (mask & Protocol.FIELD_R) != 0 ) st.r = Protocol.angle( in.get() );
+		if ( (mask & Protocol.FIELD_D) != 0 ) st.d = Protocol.angle( in.get() );
+		if ( (mask & Protocol.FIELD_S) != 0 ) st.s = Protocol.speed( in.get() );
+		if ( (mask & Protocol.FIELD_C) != 0 ) st.c = in.getInt();
+		if ( (mask & Protocol.FIELD_I) != 0 ) st.input = in.getInt();
+	}
+	
+	/**
+	 * Skips fields present in the record
+	 * @param in Buffer positioned at the fields
+	 * @param mask Fields present in the record
+	 */
+	private static void skipFields( ByteBuffer in, int mask )
+	{
+		// Slot and mask are already read
+		in.position( in.position() + Protocol.recordSize(mask) - 3 );
+	}
+	
+	/**
+	 * Class RemoteState - state of a player as known from received snapshots
+	 * @author Peter Cross
+	 * @version April 5, 2017
+	 */
+	static class RemoteState
+	{
+		long  id;			// Player's ID
+		int   slot;			// Player's slot
+		long  timestamp;	// Time of the snapshot the player last moved in
+		float x;			// X coordinate
+		float y;			// Y coordinate
+		float r;			// Rotation
+		float d;			// Direction
+		float s;			// Speed
+		int   c;			// Color
+		int   input;		// Sequence number of the player's last input the server applied
+		int   seq;			// Sequence number of the last snapshot with this player
 	}
 }
\ No newline at end of file
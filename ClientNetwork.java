@@ -0,0 +1,342 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class ClientNetwork - network thread of the client. It continuously sends local
+ * tank's state to Tanks Server and receives snapshots, so the game never waits for
+ * the network. Local tank's state comes from the game and remote players' states go
+ * back to it through triple buffers, which neither side blocks on
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class ClientNetwork implements Runnable
+{
+	// Logger object to log event messages
+	private static final Logger LOG = Logger.getLogger( ClientNetwork.class.getName() );
+
+	// Longest time in milliseconds to wait for the network thread to stop
+	private static final int STOP_TIMEOUT = 500;
+	// Time in milliseconds to wait before retrying after exchange failed
+	private static final int RETRY_INTERVAL = 1000;
+
+	// Local tank's state from the game to the network thread
+	private static final TripleBuffer<LocalState> local = new TripleBuffer<>( LocalState::new );
+	// Remote players' states from the network thread to the game
+	private static final TripleBuffer<WorldView> remote = new TripleBuffer<>( WorldView::new );
+	// Number of published views
+	private static int version;
+	// The last sent state, used by the network thread only
+	private static final DeadReckoning reckoning = new DeadReckoning();
+	// Reliable events to and from Tanks Server, used by the network thread only
+	private static ReliableChannel control = new ReliableChannel();
+
+	// Buffers for sent and received datagrams, used by the network thread only
+	private static final ByteBuffer out = ByteBuffer.allocateDirect( Math.max(Protocol.MAX_STATE_SIZE, Protocol.MAX_CONTROL_SIZE) );
+	private static final ByteBuffer in = ByteBuffer.allocateDirect( 65507 );
+
+	private static Thread thread;			// Network thread
+	private static volatile boolean running;// If network thread has to keep running
+	private static volatile boolean leaving;// If the player leaves and the thread has to tell the server
+
+	/**
+	 * Class LocalState - local tank's state to send to Tanks Server
+	 * @author Peter Cross
+	 * @version April 5, 2017
+	 */
+	private static class LocalState
+	{
+		long  timestamp;	// Time stamp of the state, 0 until the game offers it
+		float x;			// X coordinate
+		float y;			// Y coordinate
+		float r;			// Rotation
+		float d;			// Direction
+		float s;			// Speed
+		int   firstInput;	// Sequence number of the first input not acknowledged yet
+		int   numInputs;	// Number of inputs not acknowledged yet
+		final byte[] inputs = new byte[ Protocol.MAX_INPUTS ];
+	}
+
+	/**
+	 * Starts network thread
+	 */
+	public static synchronized void start()
+	{
+		if ( thread != null )
+			return;
+
+		running = true;
+		thread = new Thread( new ClientNetwork(), "Tanks network" );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Stops network thread. The thread tells Tanks Server that the player leaves and
+	 * stops when the server acknowledges it, or the thread is stopped after stop timeout
+	 */
+	public static synchronized void stop()
+	{
+		if ( thread == null )
+			return;
+
+		leaving = true;
+
+		try
+		{
+			ClientChannel.session().wakeup();
+			thread.join( STOP_TIMEOUT );
+		}
+		catch ( Exception e )
+		{ }
+		finally
+		{
+			running = false;
+			ClientChannel.closeSession();
+			thread = null;
+		}
+	}
+
+	/**
+	 * Offers local tank's state to send, called by the game only
+	 * @param timestamp Time stamp of the state
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 * @param prediction Inputs not acknowledged by the server, null if the tank is not predicted
+	 */
+	public static void offer( long timestamp, float x, float y, float r, float d, float s, Prediction prediction )
+	{
+		LocalState st = local.back();
+
+		st.numInputs = prediction != null ? prediction.pending( st.inputs ) : 0;
+		st.firstInput = prediction != null ? prediction.newest() - st.numInputs + 1 : 0;
+
+		st.timestamp = timestamp;
+		st.x = x;
+		st.y = y;
+		st.r = r;
+		st.d = d;
+		st.s = s;
+
+		local.publish();
+	}
+
+	/**
+	 * Gets the latest remote players' states, called by the game only
+	 * @return View of remote players
+	 */
+	public static WorldView world()
+	{
+		return remote.front();
+	}
+
+	/**
+	 * Publishes remote players' states known so far, called by the network thread only
+	 */
+	static void publish()
+	{
+		ClientExchange.copyWorld( remote.back(), ++version, -ClockSync.offset() );
+		remote.publish();
+	}
+
+	/**
+	 * Runs network thread: sends local tank's state every exchange interval, pings
+	 * Tanks Server to synchronize clocks and sends reliable events until they are
+	 * acknowledged, and applies messages from the server as they come in between
+	 */
+	@Override
+	public void run()
+	{
+		long nextSend = Protocol.time();
+		long nextPing = nextSend;
+		boolean leaveSent = false;
+
+		while ( running )
+			try
+			{
+				ClientChannel channel = ClientChannel.session();
+				long now = Protocol.time();
+
+				// When the player leaves, only the leaving goes on until the server acknowledges it
+				if ( leaving )
+				{
+					if ( !leaveSent )
+						leaveSent = control.send( Protocol.EVENT_LEAVE, 0 );
+					else if ( control.isIdle() )
+						break;
+
+					nextSend = nextPing = Long.MAX_VALUE;
+				}
+
+				if ( control.nextWrite( now ) <= now )
+				{
+					if ( control.write( out, TanksComponent.playerID, now ) )
+						channel.send( out );
+
+					continue;
+				}
+
+				if ( now >= nextSend )
+				{
+					send( channel, now );
+
+					// If the thread fell behind - do not send the missed messages in a burst
+					nextSend = Math.max( nextSend + sendInterval(), now );
+					continue;
+				}
+
+				if ( now >= nextPing )
+				{
+					ClockSync.encodePing( out.clear() );
+					channel.send( out.flip() );
+
+					nextPing = now + ClockSync.pingInterval();
+					continue;
+				}
+
+				// Wait for datagrams until the next message is due, then apply all queued ones
+				// and publish the result once
+				long next = Math.min( Math.min(nextSend, nextPing), control.nextWrite(now) );
+
+				if ( channel.receive( in, next - now ) < 0 )
+					continue;
+
+				do
+				{
+					// Empty datagram has no type to tell what it is, so it is skipped
+					if ( in.remaining() == 0 )
+						continue;
+
+					if ( in.get( 0 ) == Protocol.MSG_PONG )
+						ClockSync.applyPong( in, System.nanoTime() );
+					else if ( in.get( 0 ) == Protocol.MSG_CONTROL )
+						receiveControl( in );
+					else if ( in.get( 0 ) == Protocol.MSG_REJOIN )
+						receiveRejoin( in );
+					else
+					{
+						ClientExchange.applyChunk( in );
+						ClockSync.applySnapshotTime( ClientExchange.lastTime(), System.nanoTime() );
+					}
+				}
+				while ( channel.receive( in, 0 ) >= 0 );
+
+				publish();
+			}
+			catch ( IOException e )
+			{
+				if ( !running )
+					break;
+
+				LOG.log( Level.WARNING, "Exchange with Tanks Server failed", e );
+
+				try
+				{
+					Thread.sleep( RETRY_INTERVAL );
+				}
+				catch ( InterruptedException ie )
+				{ }
+
+				nextSend = Protocol.time();
+				nextPing = nextSend;
+			}
+	}
+
+	/**
+	 * Applies CONTROL message from Tanks Server
+	 * @param in Buffer with the message
+	 */
+	private static void receiveControl( ByteBuffer in )
+	{
+		try
+		{
+			if ( in.get() != Protocol.MSG_CONTROL || in.get() != Protocol.VERSION
+				 || in.getLong() != TanksComponent.playerID )
+				return;
+
+			control.read( in, ClientExchange::applyEvent );
+		}
+		catch ( BufferUnderflowException e )
+		{
+			// Ignore truncated messages
+		}
+	}
+
+	/**
+	 * Applies REJOIN message from Tanks Server: the server does not know the player any more,
+	 * so a new session starts, with new reliable events since the server numbers them from 1 again
+	 * @param in Buffer with the message
+	 */
+	private static void receiveRejoin( ByteBuffer in )
+	{
+		if ( in.remaining() < Protocol.REJOIN_SIZE || in.get() != Protocol.MSG_REJOIN || in.get() != Protocol.VERSION
+			 || in.getLong() != TanksComponent.playerID || leaving )
+			return;
+
+		LOG.info( "Tanks Server asked to join again" );
+
+		ClientExchange.rejoin();
+		control = new ReliableChannel();
+	}
+
+	/**
+	 * Checks if local tank's state is sent by dead reckoning. Until the player has joined,
+	 * and to a server moving tanks by inputs, it's sent every exchange interval
+	 * @return true if the state is sent only when receivers' extrapolation is off
+	 */
+	private static boolean reckons()
+	{
+		return DeadReckoning.enabled && ClientExchange.lastSeq() != 0 && !ClientExchange.authoritative();
+	}
+
+	/**
+	 * Gets time until local tank's state is sent or checked if it's due
+	 * @return Time in milliseconds
+	 */
+	private static int sendInterval()
+	{
+		return reckons() ? DeadReckoning.checkInterval() : TanksComponent.EXCH_INTERVAL;
+	}
+
+	/**
+	 * Sends local tank's state to Tanks Server. Without dead reckoning it's sent even if
+	 * it did not change, so the server keeps the player's session and keeps answering
+	 * with snapshots
+	 * @param channel Endpoint to send through
+	 * @param now Local time in milliseconds
+	 * @throws IOException
+	 */
+	private static void send( ClientChannel channel, long now ) throws IOException
+	{
+		LocalState st = local.front();
+
+		// Nothing to send until the game offers the first state
+		if ( st.timestamp == 0 )
+			return;
+
+		// With dead reckoning the state is sent only when other players need it
+		if ( reckons() && !reckoning.isDue( now, st.x, st.y, st.r, st.d, st.s ) )
+			return;
+
+		// Inputs are sent only to a server that moves tanks by them, and with the joining
+		// message, so such a server knows which input the tank's state comes after
+		int numInputs = ClientExchange.authoritative() || ClientExchange.lastSeq() == 0 ? st.numInputs : 0;
+
+		// Acknowledge the last received snapshot, so the server sends only changes since it
+		ClientExchange.encodeMsg( out.clear(), st.x, st.y, st.r, st.d, st.s,
+								  TanksComponent.playerID, ClientExchange.lastSeq(), TanksFrame.color.getRGB(),
+								  st.firstInput, st.inputs, numInputs );
+		channel.send( out.flip() );
+
+		reckoning.sent( now, st.x, st.y, st.r, st.d, st.s );
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Class ClockSync - estimate of the offset of server time from the client's monotonic clock,
+ * made NTP style. The client sends PING with its time, the server answers with PONG carrying
+ * its time, and the client takes the server's time for the middle of the round trip. Samples
+ * delayed on the way have long round trips and skewed offsets, so of the last samples only the
+ * one with the shortest round trip is used. Until the first PONG comes, the offset is taken from
+ * times of received snapshots, which lag by their one-way delay
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class ClockSync
+{
+	// Logger object to log event messages
+	private static final Logger LOG = Logger.getLogger( ClockSync.class.getName() );
+
+	// Number of the last samples the best one is chosen from
+	private static final int WINDOW = 8;
+	// Time in milliseconds between pings until the window is filled and after that
+	private static final int INITIAL_PING_INTERVAL = 100;
+	private static final int PING_INTERVAL = 1000;
+
+	// Ring of the last samples: round trip times and offsets in nanoseconds
+	private static final long[] rtts = new long[WINDOW];
+	private static final long[] offsets = new long[WINDOW];
+	private static int numSamples;		// Total number of samples
+
+	// The current estimate, read by other threads for diagnostics
+	private static volatile long rtt = -1;		// Round trip time in nanoseconds, -1 until the first PONG
+	private static volatile long offset;		// Server time minus local time in nanoseconds
+	private static volatile boolean synced;		// If there is any estimate
+
+	/**
+	 * Writes PING message
+	 * @param out Buffer to write into
+	 */
+	static void encodePing( ByteBuffer out )
+	{
+		out.put( Protocol.MSG_PING );
+		out.put( Protocol.VERSION );
+		out.putLong( System.nanoTime() );
+	}
+
+	/**
+	 * Gets time until the next PING
+	 * @return Time in milliseconds
+	 */
+	static int pingInterval()
+	{
+		return numSamples < WINDOW ? INITIAL_PING_INTERVAL : PING_INTERVAL;
+	}
+
+	/**
+	 * Applies received PONG message
+	 * @param in Buffer with the message
+	 * @param receivedAt Local time of receiving the message in nanoseconds
+	 * @return false if it's not a valid PONG
+	 */
+	static boolean applyPong( ByteBuffer in, long receivedAt )
+	{
+		if ( in.remaining() < Protocol.PONG_SIZE || in.get() != Protocol.MSG_PONG || in.get() != Protocol.VERSION )
+			return false;
+
+		long sentAt = in.getLong();
+		long serverTime = in.getLong();
+		long sampleRtt = receivedAt - sentAt;
+
+		// Ignore answers to pings this client did not send
+		if ( sampleRtt < 0 )
+			return false;
+
+		int i = numSamples++ % WINDOW;
+		rtts[i] = sampleRtt;
+		offsets[i] = serverTime - (sentAt + sampleRtt / 2);
+
+		// The sample with the shortest round trip was delayed the least on the way
+		int best = 0;
+
+		for ( int j = 1; j < Math.min( numSamples, WINDOW ); j++ )
+			if ( rtts[j] < rtts[best] )
+				best = j;
+
+		if ( rtts[best] != rtt )
+			LOG.fine( "Clock offset: " + offsets[best] / 1_000_000 + " ms, round trip: " + rtts[best] / 1_000 + " us" );
+
+		offset = offsets[best];
+		rtt = rtts[best];
+		synced = true;
+
+		return true;
+	}
+
+	/**
+	 * Takes offset from snapshot's time until the first PONG comes
+	 * @param serverTime Server time of the newest applied snapshot in milliseconds, 0 if there is none
+	 * @param receivedAt Local time of receiving the snapshot in nanoseconds
+	 */
+	static void applySnapshotTime( long serverTime, long receivedAt )
+	{
+		// PONG gives a better estimate, and there is nothing to take before a snapshot is applied
+		if ( numSamples > 0 || serverTime == 0 )
+			return;
+
+		offset = serverTime * 1_000_000 - receivedAt;
+		synced = true;
+	}
+
+	/**
+	 * Checks if offset of server time is estimated
+	 * @return true if a PONG or a snapshot has come
+	 */
+	public static boolean isSynchronized()
+	{
+		return synced;
+	}
+
+	/**
+	 * Gets estimated offset of server time
+	 * @return Server time minus local time in milliseconds
+	 */
+	public static long offset()
+	{
+		return offset / 1_000_000;
+	}
+
+	/**
+	 * Gets round trip time of the sample the offset is estimated from
+	 * @return Time in microseconds or -1 until the first PONG comes
+	 */
+	public static long rtt()
+	{
+		return rtt < 0 ? -1 : rtt / 1_000;
+	}
+
+	/**
+	 * Gets estimated server time
+	 * @return Server time in milliseconds
+	 */
+	public static long serverTime()
+	{
+		return (System.nanoTime() + offset) / 1_000_000;
+	}
+}
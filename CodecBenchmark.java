@@ -0,0 +1,248 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class CodecBenchmark - measures the compact encoding of tank's state. Prints
+ * bytes per record, encode and decode throughput of snapshot records and STATE
+ * messages, and the largest error of decoded values against the original ones
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class CodecBenchmark
+{
+	// Size of a record before compact encoding: player ID, timestamp, 5 floats and color
+	private static final int OLD_RECORD_SIZE = 8 + 8 + 5*4 + 4;
+	// Number of different states to encode
+	private static final int NUM_STATES = 1024;
+	// Range of coordinate and largest magnitude of speed that can be encoded
+	private static final float MIN_POSITION = Short.MIN_VALUE * Protocol.POSITION_STEP;
+	private static final float MAX_POSITION = Short.MAX_VALUE * Protocol.POSITION_STEP;
+	private static final float MAX_SPEED = Byte.MAX_VALUE * Protocol.SPEED_STEP;
+	// Step of encoded angle
+	private static final float ANGLE_STEP = (float) (2 * Math.PI / 256);
+	// Error of float arithmetic allowed on top of half a step
+	private static final float TOLERANCE = 1e-4f;
+
+	// Address the benchmark messages come from
+	private static final InetSocketAddress ADDRESS = new InetSocketAddress( "localhost", TanksServer.DEFAULT_PORT );
+
+	/**
+	 * Starts the benchmark
+	 * @param args Command line arguments - not used
+	 * @throws Exception
+	 */
+	public static void main( String[] args ) throws Exception
+	{
+		// Keep per-packet logging of the server out of measurements
+		Logger.getLogger( TanksServer.class.getName() ).setLevel( Level.WARNING );
+
+		PlayerStates states = randomStates();
+
+		printSizes();
+		checkRoundTrip( "largest round trip error", states );
+		checkRoundTrip( "largest round trip error of edge states", edgeStates() );
+
+		ByteBuffer buf = ByteBuffer.allocate( NUM_STATES * Protocol.MAX_RECORD_SIZE );
+		ClientExchange.RemoteState st = new ClientExchange.RemoteState();
+		int[] next = { 0 };
+
+		// Encode movement records, as most records in deltas are
+		Benchmark.run( "encode record", () ->
+		{
+			if ( next[0] == NUM_STATES )
+			{
+				next[0] = 0;
+				buf.clear();
+			}
+
+			WorldSnapshot.writeRecord( buf, states, next[0]++, Protocol.MOVEMENT_FIELDS );
+		} );
+
+		// Fill buffer with records to decode
+		buf.clear();
+
+		for ( int i = 0; i < NUM_STATES; i++ )
+			WorldSnapshot.writeRecord( buf, states, i, Protocol.MOVEMENT_FIELDS );
+
+		next[0] = 0;
+
+		Benchmark.run( "decode record", () ->
+		{
+			if ( next[0]++ == NUM_STATES )
+			{
+				next[0] = 1;
+				buf.position( 0 );
+			}
+
+			buf.getShort();
+			ClientExchange.readFields( buf, buf.get(), st );
+		} );
+
+		Benchmark.sink += (long) st.x;
+
+		ByteBuffer in = ByteBuffer.allocate( Protocol.MAX_STATE_SIZE );
+
+		TanksServer.reset( new BufferPool(TanksServer.MAX_DATAGRAM, 1) );
+
+		Benchmark.run( "encode STATE", () ->
+		{
+			int i = next[0]++ & (NUM_STATES - 1);
+
+			Protocol.writeState( in.clear(), 0, states.id[i], Protocol.NO_SLOT, 0,
+								 states.x[i], states.y[i], states.r[i], states.d[i], states.s[i], states.c[i] );
+		} );
+
+		Benchmark.run( "decode and apply STATE", () ->
+		{
+			int i = next[0]++ & (NUM_STATES - 1);
+
+			Protocol.writeState( in.clear(), Protocol.STATE_JOIN, states.id[i], Protocol.NO_SLOT, 0,
+								 states.x[i], states.y[i], states.r[i], states.d[i], states.s[i], states.c[i] );
+			in.flip();
+
+			TanksServer.update( in, ADDRESS );
+		} );
+	}
+
+	/**
+	 * Prints sizes of records and messages before and after compact encoding
+	 */
+	private static void printSizes()
+	{
+		System.out.printf( "%-48s %6d bytes%n", "record before compact encoding", OLD_RECORD_SIZE );
+		System.out.printf( "%-48s %6d bytes%n", "record of moving tank", Protocol.recordSize(Protocol.MOVEMENT_FIELDS) );
+		System.out.printf( "%-48s %6d bytes%n", "record of tank moving forward", Protocol.recordSize(Protocol.FIELD_X | Protocol.FIELD_Y) );
+		System.out.printf( "%-48s %6d bytes%n", "record of joining tank", Protocol.recordSize(Protocol.JOIN_FIELDS) );
+		System.out.printf( "%-48s %6d bytes%n", "record of joining tank, authoritative", Protocol.recordSize(Protocol.ALL_FIELDS) );
+		System.out.printf( "%-48s %6d bytes%n", "record of removed tank", Protocol.recordSize(Protocol.REMOVED) );
+		System.out.printf( "%-48s %6d bytes%n", "STATE message", Protocol.STATE_SIZE );
+	}
+
+	/**
+	 * Encodes and decodes records of all states, printing the largest error of every field.
+	 * Values are rounded to the nearest step, so a field off by more than half of its step,
+	 * or a value out of range not clamped to the nearest one in range, is decoded wrong
+	 * @param name Name of the check to print
+	 * @param states States to check
+	 */
+	private static void checkRoundTrip( String name, PlayerStates states )
+	{
+		ByteBuffer buf = ByteBuffer.allocate( Protocol.MAX_RECORD_SIZE );
+		ClientExchange.RemoteState st = new ClientExchange.RemoteState();
+		float errX = 0, errY = 0, errR = 0, errD = 0, errS = 0;
+
+		for ( int i = 0; i < states.size(); i++ )
+		{
+			WorldSnapshot.writeRecord( buf.clear(), states, i, Protocol.ALL_FIELDS );
+			buf.flip();
+
+			int slot = buf.getShort() & 0xFFFF;
+			int mask = buf.get();
+			long id = buf.getLong();
+
+			ClientExchange.readFields( buf, mask, st );
+
+			if ( slot != i || id != states.id[i] || st.c != states.c[i] || buf.hasRemaining() )
+				throw new IllegalStateException( "Record of player " + states.id[i] + " is decoded wrong" );
+
+			// Coordinates and speed are compared with values clamped into their range
+			errX = Math.max( errX, Math.abs(st.x - clamp(states.x[i], MIN_POSITION, MAX_POSITION)) );
+			errY = Math.max( errY, Math.abs(st.y - clamp(states.y[i], MIN_POSITION, MAX_POSITION)) );
+			// Angles are compared modulo full turn
+			errR = Math.max( errR, (float) Math.abs(Math.IEEEremainder(st.r - states.r[i], 2 * Math.PI)) );
+			errD = Math.max( errD, (float) Math.abs(Math.IEEEremainder(st.d - states.d[i], 2 * Math.PI)) );
+			errS = Math.max( errS, Math.abs(st.s - clamp(states.s[i], -MAX_SPEED, MAX_SPEED)) );
+
+			if ( errX > Protocol.POSITION_STEP / 2 + TOLERANCE || errY > Protocol.POSITION_STEP / 2 + TOLERANCE
+				 || errR > ANGLE_STEP / 2 + TOLERANCE || errD > ANGLE_STEP / 2 + TOLERANCE
+				 || errS > Protocol.SPEED_STEP / 2 + TOLERANCE )
+				throw new IllegalStateException( "Record of player " + states.id[i] + " is off by more than half a step: x "
+												 + states.x[i] + ", y " + states.y[i] + ", r " + states.r[i]
+												 + ", d " + states.d[i] + ", s " + states.s[i] );
+		}
+
+		System.out.printf( "%-48s x %.3f, y %.3f, r %.4f, d %.4f, s %.4f%n",
+						   name, errX, errY, errR, errD, errS );
+	}
+
+	/**
+	 * Clamps value into range
+	 * @param v Value
+	 * @param min Smallest value of the range
+	 * @param max Largest value of the range
+	 * @return Value within the range
+	 */
+	private static float clamp( float v, float min, float max )
+	{
+		return Math.max( min, Math.min(max, v) );
+	}
+
+	/**
+	 * Creates random states of tanks within the arena
+	 * @return States in slots from 0 to NUM_STATES - 1
+	 */
+	private static PlayerStates randomStates()
+	{
+		Random random = new Random( 1 );
+		PlayerStates states = new PlayerStates();
+
+		for ( int i = 0; i < NUM_STATES; i++ )
+		{
+			int slot = states.add( System.currentTimeMillis() + i );
+
+			// Rotation and direction keep growing while tank turns, so take several turns
+			states.x[slot] = random.nextFloat() * TanksFrame.WIDTH;
+			states.y[slot] = random.nextFloat() * TanksFrame.HEIGHT;
+			states.r[slot] = (random.nextFloat() - 0.5f) * 40;
+			states.d[slot] = (random.nextFloat() - 0.5f) * 40;
+			states.s[slot] = (random.nextFloat() - 0.5f) * 4;
+			states.c[slot] = random.nextInt();
+		}
+
+		return states;
+	}
+
+	/**
+	 * Creates states at the edges of encoding: tanks out of the arena and far out of range
+	 * of coordinates, backing up and faster than the range of speed, with angles of many turns
+	 * either way and at half steps
+	 * @return States in slots from 0
+	 */
+	private static PlayerStates edgeStates()
+	{
+		float[][] edges =
+		{
+			// x, y, r, d, s
+			{ -40.3f, -0.1f, 0, 0, -0.01f },
+			{ TanksFrame.WIDTH + 40.3f, TanksFrame.HEIGHT + 0.1f, -0.001f, (float) -Math.PI, -1 },
+			{ -TanksFrame.WIDTH, 3 * TanksFrame.HEIGHT, (float) (2 * Math.PI), -ANGLE_STEP / 2, -2.5f },
+			{ MAX_POSITION, MIN_POSITION, (float) (-100 * Math.PI), 100.3f, -MAX_SPEED },
+			{ 10_000, -10_000, ANGLE_STEP * 1.5f, -37.7f, -10 },
+			{ -1e9f, 1e9f, -1e4f, 1e4f, 1e9f },
+			{ Protocol.POSITION_STEP / 2, -Protocol.POSITION_STEP / 2, 0, 0, -Protocol.SPEED_STEP / 2 },
+		};
+
+		PlayerStates states = new PlayerStates();
+
+		for ( int i = 0; i < edges.length; i++ )
+		{
+			int slot = states.add( i + 1 );
+
+			states.x[slot] = edges[i][0];
+			states.y[slot] = edges[i][1];
+			states.r[slot] = edges[i][2];
+			states.d[slot] = edges[i][3];
+			states.s[slot] = edges[i][4];
+			states.c[slot] = i % 2 == 0 ? -1 : 0x00FF00;
+		}
+
+		return states;
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ *  Program Name : Tanks
+ */
+
+/**
+ * Class DeadReckoning - policy of sending local tank's state only when other players need it.
+ * Receivers extrapolate a tank from its last state by its speed and direction, so the client
+ * runs the same extrapolation of the last sent state and sends a new one only when the tank
+ * is farther from it or turned more than the thresholds. A tank moving straight costs only
+ * a heartbeat, which also keeps the player's session and acknowledges snapshots, and a tank
+ * changing its movement is sent not more often than the rate cap allows
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class DeadReckoning
+{
+	// Default largest error of extrapolated position in pixels
+	public static final float DEFAULT_POSITION_THRESHOLD = 2f;
+	// Default largest error of extrapolated rotation and direction in degrees
+	public static final float DEFAULT_ANGLE_THRESHOLD = 5f;
+	// Default longest time in milliseconds between sent states
+	public static final int DEFAULT_HEARTBEAT = 500;
+	// Longest heartbeat, which receivers extrapolate tanks for between their states
+	public static final int MAX_HEARTBEAT = 1000;
+	// Default largest number of sent states per second
+	public static final int DEFAULT_MAX_RATE = 20;
+
+	// If local tank's state is sent by dead reckoning instead of every exchange interval
+	public static boolean enabled;
+	// Largest error of extrapolated position in pixels
+	public static float positionThreshold = DEFAULT_POSITION_THRESHOLD;
+	// Largest error of extrapolated rotation and direction in radians
+	public static float angleThreshold = (float) Math.toRadians( DEFAULT_ANGLE_THRESHOLD );
+	// Longest time in milliseconds between sent states
+	public static int heartbeat = DEFAULT_HEARTBEAT;
+	// Largest number of sent states per second
+	public static int maxRate = DEFAULT_MAX_RATE;
+
+	// The last sent state as receivers get it, quantized
+	private boolean sent;		// If any state is sent
+	private long  sentAt;		// Local time of sending in milliseconds
+	private float x;			// X coordinate
+	private float y;			// Y coordinate
+	private float r;			// Rotation
+	private float d;			// Direction
+	private float s;			// Speed
+
+	/**
+	 * Turns dead reckoning on
+	 * @param params Comma separated position threshold in pixels, angle threshold in degrees,
+	 * heartbeat in milliseconds up to MAX_HEARTBEAT and maximum rate per second, missing ones stay default
+	 */
+	public static void enable( String params )
+	{
+		enabled = true;
+
+		String[] values = params.isEmpty() ? new String[0] : params.split( "," );
+
+		if ( values.length > 0 ) positionThreshold = Float.parseFloat( values[0] );
+		if ( values.length > 1 ) angleThreshold = (float) Math.toRadians( Float.parseFloat(values[1]) );
+		if ( values.length > 2 ) heartbeat = Math.min( Integer.parseInt(values[2]), MAX_HEARTBEAT );
+		if ( values.length > 3 ) maxRate = Integer.parseInt( values[3] );
+	}
+
+	/**
+	 * Gets time between checks if the state is due, which caps the rate of sent states
+	 * @return Time in milliseconds
+	 */
+	public static int checkInterval()
+	{
+		return Math.max( 1, 1000 / maxRate );
+	}
+
+	/**
+	 * Checks if the state has to be sent
+	 * @param now Local time in milliseconds
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 * @return true if nothing is sent yet, the heartbeat is due or receivers' extrapolation
+	 * of the last sent state is off by more than the thresholds
+	 */
+	public boolean isDue( long now, float x, float y, float r, float d, float s )
+	{
+		if ( !sent || now - sentAt >= heartbeat )
+			return true;
+
+		// Extrapolate the last sent state as InterpolationBuffer does
+		float frames = (now - sentAt) / InterpolationBuffer.FRAME_TIME;
+		float ex = this.x + (float) Math.sin( this.d ) * this.s * frames;
+		float ey = this.y + (float) Math.cos( this.d ) * this.s * frames;
+
+		return (ex - x) * (ex - x) + (ey - y) * (ey - y) > positionThreshold * positionThreshold
+			|| Math.abs( Math.IEEEremainder(this.r - r, 2 * Math.PI) ) > angleThreshold
+			|| Math.abs( Math.IEEEremainder(this.d - d, 2 * Math.PI) ) > angleThreshold;
+	}
+
+	/**
+	 * Remembers sent state
+	 * @param now Local time in milliseconds
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 */
+	public void sent( long now, float x, float y, float r, float d, float s )
+	{
+		sent = true;
+		sentAt = now;
+
+		// Receivers extrapolate quantized state
+		this.x = Protocol.position( Protocol.position(x) );
+		this.y = Protocol.position( Protocol.position(y) );
+		this.r = Protocol.angle( Protocol.angle(r) );
+		this.d = Protocol.angle( Protocol.angle(d) );
+		this.s = Protocol.speed( Protocol.speed(s) );
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+
+/**
+ * Class GameLoop - game loop on its own thread, in place of Swing timer and repainting.
+ * The game advances in steps of fixed time, as many as the elapsed time holds, so its
+ * speed does not depend on the frame rate or on delays of the event dispatch thread.
+ * Frames are drawn actively through the window's buffer strategy, between the two
+ * latest steps by the time left over, so movement is smooth at any refresh rate
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class GameLoop implements Runnable
+{
+	// Time of a step in nanoseconds, exact instead of rounded to milliseconds as TICK is
+	public static final long STEP = 1_000_000_000L / TanksComponent.FPS_MAX;
+	// Longest time in nanoseconds made up for at once, so the game does not spiral
+	// into more steps per frame after a long stall
+	private static final long MAX_FRAME_TIME = 250_000_000L;
+	// Number of frames per second when the display does not tell its refresh rate
+	private static final int DEFAULT_FPS = 60;
+
+	private final TanksComponent comp;	// Component the game runs in
+	private final Window window;		// Window the frames are drawn into
+	private final long frameTime;		// Shortest time between frames in nanoseconds
+
+	/**
+	 * Class constructor
+	 * @param comp Component the game runs in
+	 * @param window Window containing the component
+	 * @param fps Largest number of frames per second, 0 for the display's refresh rate
+	 */
+	public GameLoop( TanksComponent comp, Window window, int fps )
+	{
+		this.comp = comp;
+		this.window = window;
+
+		if ( fps == 0 )
+		{
+			int rate = window.getGraphicsConfiguration().getDevice().getDisplayMode().getRefreshRate();
+			fps = rate != DisplayMode.REFRESH_RATE_UNKNOWN ? rate : DEFAULT_FPS;
+		}
+
+		this.frameTime = 1_000_000_000L / fps;
+	}
+
+	/**
+	 * Starts the loop, called on the event dispatch thread once the window is shown
+	 */
+	public void start()
+	{
+		// Frames are drawn by the loop only, not by Swing
+		window.setIgnoreRepaint( true );
+		comp.setIgnoreRepaint( true );
+		window.createBufferStrategy( 2 );
+
+		Thread thread = new Thread( this, "Tanks game loop" );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Runs the loop: makes the steps the elapsed time holds, draws a frame and waits for the next one
+	 */
+	@Override
+	public void run()
+	{
+		BufferStrategy strategy = window.getBufferStrategy();
+		long previous = System.nanoTime();
+		long nextFrame = previous;
+		long accumulator = 0;
+
+		while ( true )
+		{
+			long now = System.nanoTime();
+			accumulator += Math.min( now - previous, MAX_FRAME_TIME );
+			previous = now;
+
+			while ( accumulator >= STEP )
+			{
+				comp.step();
+				accumulator -= STEP;
+			}
+
+			render( strategy, (float) accumulator / STEP );
+
+			// If the loop fell behind - do not draw the missed frames in a burst
+			nextFrame = Math.max( nextFrame + frameTime, now );
+			LockSupport.parkNanos( nextFrame - System.nanoTime() );
+		}
+	}
+
+	/**
+	 * Draws a frame into the window's back buffer and shows it
+	 * @param strategy Window's buffer strategy
+	 * @param alpha Fraction of the time from the latest step to the next one
+	 */
+	private void render( BufferStrategy strategy, float alpha )
+	{
+		// Draw again while contents of the buffers are lost
+		do
+		{
+			do
+			{
+				Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+
+				try
+				{
+					// Window's graphics start at its outer corner, the component is inside the frame's borders
+					Point p = SwingUtilities.convertPoint( comp, 0, 0, window );
+					g.translate( p.x, p.y );
+					g.clipRect( 0, 0, comp.getWidth(), comp.getHeight() );
+
+					g.setColor( comp.getParent().getBackground() );
+					g.fillRect( 0, 0, comp.getWidth(), comp.getHeight() );
+
+					g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+					comp.render( g, alpha );
+				}
+				finally
+				{
+					g.dispose();
+				}
+			}
+			while ( strategy.contentsRestored() );
+
+			strategy.show();
+		}
+		while ( strategy.contentsLost() );
+
+		// Flush the drawing to the display now rather than when the system buffers it
+		Toolkit.getDefaultToolkit().sync();
+	}
+}
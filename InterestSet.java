@@ -0,0 +1,135 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.util.Arrays;
+
+/**
+ * Class InterestSet - players within the area of interest of one client.
+ * For every player the set remembers the snapshot it entered the area in and,
+ * once it's out, the snapshot it left in, so the snapshot for the client can be
+ * encoded as delta against the baseline the client acknowledged: players that
+ * entered after the baseline go in full, players that left after it go as REMOVED.
+ * Entries are recycled through a shared pool, so moving in and out of the area
+ * does not allocate in steady state
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class InterestSet
+{
+	// Pool of entries shared by all sets of the server thread
+	private static Entry[] pool = new Entry[64];
+	private static int poolSize;
+
+	// Entries of the set by player's ID
+	private final PlayerTable<Entry> entries = new PlayerTable<>();
+
+	/**
+	 * Class Entry - player in the area of interest
+	 * @author Peter Cross
+	 * @version April 5, 2017
+	 */
+	static class Entry
+	{
+		int slot;		// Player's slot
+		int entered;	// Snapshot the player entered the area in
+		int left;		// Snapshot the player left the area in or 0 if it's in the area
+		int seen;		// Last snapshot the player was found in the area
+	}
+
+	/**
+	 * Gets number of entries in the set, including players that left the area
+	 * but whose removal the client has not acknowledged yet
+	 * @return Number of entries
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Gets player's ID at specified position
+	 * @param i Position from 0 to size()-1
+	 * @return Player's ID
+	 */
+	public long idAt( int i )
+	{
+		return entries.keyAt( i );
+	}
+
+	/**
+	 * Gets entry at specified position
+	 * @param i Position from 0 to size()-1
+	 * @return Entry
+	 */
+	Entry entryAt( int i )
+	{
+		return entries.valueAt( i );
+	}
+
+	/**
+	 * Marks player as found in the area in the snapshot
+	 * @param playerID Player's ID
+	 * @param slot Player's slot
+	 * @param seq Sequence number of the snapshot
+	 */
+	public void seen( long playerID, int slot, int seq )
+	{
+		Entry e = entries.get( playerID );
+
+		// If player is new in the area or comes back into it
+		if ( e == null )
+		{
+			e = poolSize > 0 ? pool[--poolSize] : new Entry();
+			entries.put( playerID, e );
+			e.entered = seq;
+			e.left = 0;
+		}
+		else if ( e.left != 0 )
+		{
+			e.entered = seq;
+			e.left = 0;
+		}
+
+		e.slot = slot;
+		e.seen = seq;
+	}
+
+	/**
+	 * Marks players not found in the area in the snapshot as left
+	 * @param seq Sequence number of the snapshot
+	 */
+	public void sweep( int seq )
+	{
+		for ( int i = 0; i < entries.size(); i++ )
+		{
+			Entry e = entries.valueAt( i );
+
+			if ( e.left == 0 && e.seen != seq )
+				e.left = seq;
+		}
+	}
+
+	/**
+	 * Removes entry at specified position and returns it to the pool
+	 * @param i Position from 0 to size()-1
+	 */
+	public void removeAt( int i )
+	{
+		Entry e = entries.remove( entries.keyAt(i) );
+
+		if ( poolSize == pool.length )
+			pool = Arrays.copyOf( pool, poolSize * 2 );
+
+		pool[poolSize++] = e;
+	}
+
+	/**
+	 * Removes all entries and returns them to the pool
+	 */
+	public void clear()
+	{
+		for ( int i = entries.size() - 1; i >= 0; i-- )
+			removeAt( i );
+	}
+}
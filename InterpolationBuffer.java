@@ -0,0 +1,201 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.util.Arrays;
+
+/**
+ * Class InterpolationBuffer - recent timestamped states of remote tanks, a ring of states
+ * for every tank in shared arrays, indexed by tank. A tank is drawn a little behind real
+ * time, at a state interpolated between the two received states around that time, so it
+ * moves smoothly however seldom states come. When no newer state is there yet the tank's
+ * movement is extrapolated, but only for a limited time, after which it stops where it
+ * was predicted to be
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class InterpolationBuffer
+{
+	// Number of states kept of every tank, must be a power of two
+	private static final int CAPACITY = 8;
+	private static final int MASK = CAPACITY - 1;
+	private static final int SHIFT = Integer.numberOfTrailingZeros( CAPACITY );
+	// Duration of one frame the speed is measured in, in milliseconds
+	static final float FRAME_TIME = 1000f / TanksComponent.FPS_MAX;
+	private static final float FULL_TURN = (float) (2 * Math.PI);
+
+	// Rings of received states, the ring of tank i takes CAPACITY elements from i * CAPACITY
+	private long[]  time;
+	private float[] xs;
+	private float[] ys;
+	private float[] rs;
+	private float[] ds;
+	private float[] ss;
+	private int[] heads;		// Index of the newest state of every tank in its ring
+	private int[] counts;		// Number of states in the ring of every tank
+
+	// State at the time of the last sample
+	float x, y, r, d, s;
+
+	/**
+	 * Class constructor
+	 * @param numTanks Number of tanks to keep states of
+	 */
+	public InterpolationBuffer( int numTanks )
+	{
+		time = new long[ numTanks << SHIFT ];
+		xs = new float[ numTanks << SHIFT ];
+		ys = new float[ numTanks << SHIFT ];
+		rs = new float[ numTanks << SHIFT ];
+		ds = new float[ numTanks << SHIFT ];
+		ss = new float[ numTanks << SHIFT ];
+		heads = new int[ numTanks ];
+		counts = new int[ numTanks ];
+	}
+
+	/**
+	 * Grows the buffer to keep states of more tanks
+	 * @param numTanks New number of tanks
+	 */
+	public void grow( int numTanks )
+	{
+		time = Arrays.copyOf( time, numTanks << SHIFT );
+		xs = Arrays.copyOf( xs, numTanks << SHIFT );
+		ys = Arrays.copyOf( ys, numTanks << SHIFT );
+		rs = Arrays.copyOf( rs, numTanks << SHIFT );
+		ds = Arrays.copyOf( ds, numTanks << SHIFT );
+		ss = Arrays.copyOf( ss, numTanks << SHIFT );
+		heads = Arrays.copyOf( heads, numTanks );
+		counts = Arrays.copyOf( counts, numTanks );
+	}
+
+	/**
+	 * Forgets all states of the tank
+	 * @param tank Index of the tank
+	 */
+	public void clear( int tank )
+	{
+		counts[tank] = 0;
+	}
+
+	/**
+	 * Adds received state, states not newer than the newest one are ignored
+	 * @param tank Index of the tank
+	 * @param t Time of the state
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 */
+	public void add( int tank, long t, float x, float y, float r, float d, float s )
+	{
+		int base = tank << SHIFT;
+
+		if ( counts[tank] > 0 && t <= time[ base + heads[tank] ] )
+			return;
+
+		int head = heads[tank] = (heads[tank] + 1) & MASK;
+		counts[tank] = Math.min( counts[tank] + 1, CAPACITY );
+
+		time[base + head] = t;
+		xs[base + head] = x;
+		ys[base + head] = y;
+		rs[base + head] = r;
+		ds[base + head] = d;
+		ss[base + head] = s;
+	}
+
+	/**
+	 * Checks if there are no states of the tank
+	 * @param tank Index of the tank
+	 * @return true if no state was added yet
+	 */
+	public boolean isEmpty( int tank )
+	{
+		return counts[tank] == 0;
+	}
+
+	/**
+	 * Computes state of the tank at specified time into fields x, y, r, d and s
+	 * @param tank Index of the tank
+	 * @param t Time to compute the state at
+	 * @param maxExtrapolation Longest time in milliseconds to extrapolate past the newest state
+	 * @return false if there are no states
+	 */
+	public boolean sample( int tank, long t, long maxExtrapolation )
+	{
+		int count = counts[tank];
+
+		if ( count == 0 )
+			return false;
+
+		int base = tank << SHIFT;
+		int head = heads[tank];
+
+		// Find the newest state not later than the time
+		int i = head;
+		int n = 0;
+
+		while ( n < count - 1 && time[base + i] > t )
+		{
+			i = (i - 1) & MASK;
+			n++;
+		}
+
+		// Before the oldest state - hold the oldest one
+		if ( time[base + i] > t )
+		{
+			set( base + i );
+			return true;
+		}
+
+		// Past the newest state - move on with its speed and direction
+		if ( i == head )
+		{
+			set( base + i );
+
+			float frames = Math.min( t - time[base + i], maxExtrapolation ) / FRAME_TIME;
+			x += (float) Math.sin( d ) * s * frames;
+			y += (float) Math.cos( d ) * s * frames;
+			return true;
+		}
+
+		// Between two states - interpolate
+		int a = base + i;
+		int b = base + ((i + 1) & MASK);
+		float k = (float) (t - time[a]) / (time[b] - time[a]);
+
+		x = xs[a] + (xs[b] - xs[a]) * k;
+		y = ys[a] + (ys[b] - ys[a]) * k;
+		r = lerpAngle( rs[a], rs[b], k );
+		d = lerpAngle( ds[a], ds[b], k );
+		s = ss[a] + (ss[b] - ss[a]) * k;
+		return true;
+	}
+
+	/**
+	 * Sets sampled state to the state in the rings
+	 * @param i Index of the state in the arrays
+	 */
+	private void set( int i )
+	{
+		x = xs[i];
+		y = ys[i];
+		r = rs[i];
+		d = ds[i];
+		s = ss[i];
+	}
+
+	/**
+	 * Interpolates angle the shorter way round
+	 * @param a Angle to interpolate from
+	 * @param b Angle to interpolate to
+	 * @param k Share of the way from a to b
+	 * @return Interpolated angle
+	 */
+	static float lerpAngle( float a, float b, float k )
+	{
+		return a + (float) Math.IEEEremainder( b - a, FULL_TURN ) * k;
+	}
+}
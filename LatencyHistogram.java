@@ -0,0 +1,116 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.util.Arrays;
+
+/**
+ * Class LatencyHistogram - histogram of latencies with fixed relative precision.
+ * Values are counted in buckets whose width grows with the value: every power
+ * of two range is split into 64 buckets, so a percentile is off by less than 2%
+ * while the whole range of long values takes a few thousand counters.
+ * Recording does not allocate
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class LatencyHistogram
+{
+	// Number of bits of sub-bucket index and number of sub-buckets in every power of two range
+	private static final int SUB_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	// Counts of values in every bucket
+	private final long[] counts = new long[ (64 - SUB_BITS + 1) * SUB_BUCKETS ];
+	private long total;		// Number of recorded values
+	private long max;		// Largest recorded value
+
+	/**
+	 * Records a value
+	 * @param value Value to record, negative values count as 0
+	 */
+	public void record( long value )
+	{
+		value = Math.max( value, 0 );
+
+		counts[ bucket(value) ]++;
+		total++;
+		max = Math.max( max, value );
+	}
+
+	/**
+	 * Gets number of recorded values
+	 * @return Number of values
+	 */
+	public long count()
+	{
+		return total;
+	}
+
+	/**
+	 * Gets value below which the specified share of recorded values is
+	 * @param percentile Percentile from 0 to 100
+	 * @return Upper bound of the bucket the percentile falls into, or 0 if nothing is recorded
+	 */
+	public long percentile( double percentile )
+	{
+		if ( total == 0 )
+			return 0;
+
+		long rank = Math.max( 1, (long) Math.ceil(total * percentile / 100) );
+		long seen = 0;
+
+		for ( int i = 0; i < counts.length; i++ )
+		{
+			seen += counts[i];
+
+			if ( seen >= rank )
+				return Math.min( upperBound(i), max );
+		}
+
+		return max;
+	}
+
+	/**
+	 * Removes all recorded values
+	 */
+	public void reset()
+	{
+		Arrays.fill( counts, 0 );
+		total = 0;
+		max = 0;
+	}
+
+	/**
+	 * Gets bucket of the value
+	 * @param value Non-negative value
+	 * @return Bucket index
+	 */
+	private static int bucket( long value )
+	{
+		// Values below SUB_BUCKETS have a bucket each
+		if ( value < SUB_BUCKETS )
+			return (int) value;
+
+		// Drop low bits, so that the value keeps SUB_BITS bits below its highest bit,
+		// and count buckets of all narrower ranges before it
+		int shift = 63 - Long.numberOfLeadingZeros( value ) - SUB_BITS;
+
+		return (shift << SUB_BITS) + (int) (value >>> shift);
+	}
+
+	/**
+	 * Gets the largest value of the bucket
+	 * @param bucket Bucket index
+	 * @return Upper bound of the bucket
+	 */
+	private static long upperBound( int bucket )
+	{
+		if ( bucket < SUB_BUCKETS )
+			return bucket;
+
+		int shift = (bucket >>> SUB_BITS) - 1;
+		long top = bucket - ((long) shift << SUB_BITS);
+
+		return ((top + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,501 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class LoadGenerator - headless load generator for Tanks Server. Simulates bot
+ * players, every one with its own UDP channel, speaking the same protocol as
+ * ClientExchange. Bots drive TankImpl tanks with random steering and send their
+ * state at the client's exchange rate. All bots run in one thread on a Selector.
+ * The number of bots is ramped up in steps, and for every step the achieved update
+ * rate, latency from an update to the next complete snapshot and lost responses
+ * are printed
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class LoadGenerator
+{
+	// Default numbers of bots of ramp steps
+	private static final int[] DEFAULT_BOTS = { 10, 100, 500, 1000 };
+	// Default number of updates per second of every bot, as sent by the client
+	private static final int DEFAULT_RATE = 1000 / TanksComponent.EXCH_INTERVAL;
+	// Default time of measuring every step in seconds
+	private static final int DEFAULT_DURATION = 5;
+	// Time in milliseconds bots run after every ramp step before measuring
+	private static final int WARMUP_TIME = 1000;
+	// Time of one frame of tank's movement in nanoseconds
+	private static final long FRAME_TIME = 1_000_000_000L / TanksComponent.FPS_MAX;
+	// Longest time in milliseconds a bot keeps its steering
+	private static final int MAX_STEER_TIME = 2000;
+
+	private final InetSocketAddress server;	// Address of Tanks Server
+	private final long sendInterval;		// Time between updates of a bot in nanoseconds
+	private final Selector selector;		// Selector of all bots' channels
+	private final List<Bot> bots = new ArrayList<>();
+	private final Random random = new Random();
+
+	// Buffers for sent and received messages, shared by all bots
+	private final ByteBuffer out = ByteBuffer.allocateDirect( Math.max(Protocol.MAX_STATE_SIZE, Protocol.MAX_CONTROL_SIZE) );
+	private final ByteBuffer in = ByteBuffer.allocateDirect( TanksServer.MAX_DATAGRAM );
+
+	// Measurements of the current step
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private long updates;		// Number of sent updates
+	private long snapshots;		// Number of completely received snapshots
+	private long incomplete;	// Number of snapshots with lost chunks
+	private long unanswered;	// Number of updates with no complete snapshot before the next update
+	private long receivedBytes;	// Number of received bytes
+
+	/**
+	 * Class Bot - simulated player
+	 * @author Peter Cross
+	 * @version April 5, 2017
+	 */
+	private static class Bot
+	{
+		final DatagramChannel channel;	// Channel to the server
+		final TankImpl tank;			// Tank driven by the bot
+		final long id;					// Player's ID
+		final int color;				// Tank's color
+		ReliableChannel control = new ReliableChannel();	// Reliable events to and from the server
+		int slot = Protocol.NO_SLOT;	// Slot the server assigned to the bot
+
+		long nextSend;		// Time of the next update in nanoseconds
+		long movedAt;		// Time the tank was moved to in nanoseconds
+		long steerUntil;	// Time of the next steering change in nanoseconds
+		long sentAt;		// Time of the update not answered yet or 0
+
+		int lastSeq;		// Sequence number of the last completely received snapshot
+		int chunksSeq = -1;	// Sequence number of the snapshot whose chunks are being received
+		int chunksPending;	// Number of its chunks not received yet
+		boolean chunksPartial;	// If some of its chunks were cut by the server
+		final long[] chunksReceived = new long[ (Protocol.MAX_CHUNKS + 63) / 64 ];
+
+		/**
+		 * Class constructor
+		 * @param channel Channel to the server
+		 * @param tank Tank driven by the bot
+		 * @param id Player's ID
+		 * @param color Tank's color
+		 */
+		Bot( DatagramChannel channel, TankImpl tank, long id, int color )
+		{
+			this.channel = channel;
+			this.tank = tank;
+			this.id = id;
+			this.color = color;
+		}
+	}
+
+	/**
+	 * Class constructor
+	 * @param server Address of Tanks Server
+	 * @param rate Number of updates per second of every bot
+	 * @throws IOException
+	 */
+	public LoadGenerator( InetSocketAddress server, int rate ) throws IOException
+	{
+		this.server = server;
+		this.sendInterval = 1_000_000_000L / rate;
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * Adds bots up to specified number
+	 * @param numBots Number of bots
+	 * @throws IOException
+	 */
+	public void addBots( int numBots ) throws IOException
+	{
+		Rectangle2D bounds = new Rectangle2D.Float( 0, 0, TanksFrame.WIDTH, TanksFrame.HEIGHT );
+		long now = System.nanoTime();
+
+		while ( bots.size() < numBots )
+		{
+			DatagramChannel channel = DatagramChannel.open();
+			channel.connect( server );
+			channel.configureBlocking( false );
+
+			// IDs of bots are negative, so they never collide with real players' IDs
+			long id = -1 - random.nextInt( Integer.MAX_VALUE );
+			TankImpl tank = new TankImpl( bounds, random.nextInt(TanksFrame.WIDTH - 20),
+										  random.nextInt(TanksFrame.HEIGHT - 20), id );
+
+			Bot bot = new Bot( channel, tank, id, random.nextInt() );
+			bot.movedAt = now;
+			channel.register( selector, SelectionKey.OP_READ, bot );
+			bots.add( bot );
+		}
+
+		// Spread updates of all bots evenly over the send interval
+		for ( int i = 0; i < bots.size(); i++ )
+			bots.get(i).nextSend = now + sendInterval * i / bots.size();
+	}
+
+	/**
+	 * Runs bots for specified time
+	 * @param millis Time in milliseconds
+	 * @throws IOException
+	 */
+	public void run( long millis ) throws IOException
+	{
+		long end = System.nanoTime() + millis * 1_000_000;
+		int next = 0;
+
+		while ( System.nanoTime() - end < 0 )
+		{
+			long now = System.nanoTime();
+
+			// Send updates of bots which are due, in the order they are spread in,
+			// but not more than one round, so that receiving is not starved
+			for ( int i = 0; i < bots.size() && bots.get(next).nextSend - now <= 0; i++ )
+			{
+				Bot bot = bots.get( next );
+
+				sendUpdate( bot, now );
+				bot.nextSend += sendInterval;
+				next = (next + 1) % bots.size();
+			}
+
+			long wait = (bots.get(next).nextSend - System.nanoTime()) / 1_000_000;
+
+			// Wait for snapshots, but not longer than until the next update is due
+			if ( wait > 0 )
+				selector.select( wait );
+			else
+				selector.selectNow();
+
+			for ( SelectionKey key : selector.selectedKeys() )
+				receive( (Bot) key.attachment() );
+
+			selector.selectedKeys().clear();
+		}
+	}
+
+	/**
+	 * Moves bot's tank to the current time and sends its state to the server
+	 * @param bot Bot to send update of
+	 * @param now Current time in nanoseconds
+	 * @throws IOException
+	 */
+	private void sendUpdate( Bot bot, long now ) throws IOException
+	{
+		TankImpl tank = bot.tank;
+
+		// Change steering from time to time
+		if ( now - bot.steerUntil >= 0 )
+		{
+			tank.steer( Sprite.Direction.values()[ random.nextInt(Sprite.Direction.values().length) ],
+						Sprite.SpeedRel.values()[ random.nextInt(Sprite.SpeedRel.values().length) ] );
+			bot.steerUntil = now + random.nextInt( MAX_STEER_TIME ) * 1_000_000L;
+		}
+
+		// Move the tank frame by frame, as the client does
+		for ( ; now - bot.movedAt >= FRAME_TIME; bot.movedAt += FRAME_TIME )
+			tank.update();
+
+		// If previous update was not answered with a complete snapshot
+		if ( bot.sentAt != 0 )
+			unanswered++;
+
+		// Bot joins with its color until it has acknowledged the first snapshot
+		int flags = bot.lastSeq == 0 ? Protocol.STATE_JOIN : 0;
+
+		out.clear();
+		Protocol.writeState( out, flags, bot.id, bot.slot, bot.lastSeq, tank.x, tank.y, tank.r, tank.d, tank.s, bot.color );
+		out.flip();
+
+		bot.channel.write( out );
+		bot.sentAt = now;
+		updates++;
+	}
+
+	/**
+	 * Receives all available snapshot chunks of the bot. Only chunk headers are read -
+	 * enough to acknowledge complete snapshots as the client does
+	 * @param bot Bot to receive for
+	 * @throws IOException
+	 */
+	private void receive( Bot bot ) throws IOException
+	{
+		while ( true )
+		{
+			in.clear();
+
+			if ( bot.channel.receive( in ) == null )
+				return;
+
+			in.flip();
+			receivedBytes += in.remaining();
+
+			// Take the slot from the server's events and acknowledge them
+			if ( in.remaining() >= Protocol.CONTROL_HEADER_SIZE && in.get( 0 ) == Protocol.MSG_CONTROL )
+			{
+				receiveControl( bot );
+				continue;
+			}
+
+			// Server that does not know the bot any more asks it to join again
+			if ( in.remaining() >= Protocol.REJOIN_SIZE && in.get( 0 ) == Protocol.MSG_REJOIN )
+			{
+				rejoin( bot );
+				continue;
+			}
+
+			if ( in.remaining() < Protocol.SNAPSHOT_HEADER_SIZE
+				 || in.get() != Protocol.MSG_SNAPSHOT || in.get() != Protocol.VERSION )
+				continue;
+
+			int seq = in.getInt();
+			int baseline = in.getInt();
+			int flags = in.get();
+			int chunk = in.get() & 0xFF;
+			int numChunks = in.get() & 0xFF;
+
+			// Ignore snapshots older than already received and deltas against unknown baseline
+			if ( seq < bot.lastSeq || seq < bot.chunksSeq || baseline > bot.lastSeq )
+				continue;
+
+			// If it's the first chunk of a newer snapshot - start collecting its chunks
+			if ( seq != bot.chunksSeq )
+			{
+				// If chunks of the previous snapshot were lost
+				if ( bot.chunksPending > 0 )
+					incomplete++;
+
+				bot.chunksSeq = seq;
+				bot.chunksPending = numChunks;
+				bot.chunksPartial = false;
+				Arrays.fill( bot.chunksReceived, 0 );
+			}
+
+			// Ignore duplicated chunks
+			if ( (bot.chunksReceived[chunk >>> 6] & (1L << chunk)) != 0 )
+				continue;
+
+			bot.chunksReceived[chunk >>> 6] |= 1L << chunk;
+			bot.chunksPending--;
+			bot.chunksPartial |= (flags & Protocol.FLAG_PARTIAL) != 0;
+
+			// If all chunks of the snapshot are received
+			if ( bot.chunksPending == 0 )
+			{
+				if ( !bot.chunksPartial )
+					bot.lastSeq = seq;
+
+				if ( bot.sentAt != 0 )
+				{
+					latency.record( System.nanoTime() - bot.sentAt );
+					bot.sentAt = 0;
+				}
+
+				snapshots++;
+			}
+		}
+	}
+
+	/**
+	 * Applies REJOIN message to the bot: it forgets its session and joins with its color again
+	 * @param bot Bot the message came to
+	 */
+	private void rejoin( Bot bot )
+	{
+		if ( in.get() != Protocol.MSG_REJOIN || in.get() != Protocol.VERSION || in.getLong() != bot.id )
+			return;
+
+		bot.lastSeq = 0;
+		bot.chunksSeq = -1;
+		bot.chunksPending = 0;
+		bot.chunksPartial = false;
+		bot.slot = Protocol.NO_SLOT;
+		bot.control = new ReliableChannel();
+	}
+
+	/**
+	 * Applies CONTROL message to the bot and answers it with acknowledgment
+	 * @param bot Bot the message came to
+	 * @throws IOException
+	 */
+	private void receiveControl( Bot bot ) throws IOException
+	{
+		if ( in.get() != Protocol.MSG_CONTROL || in.get() != Protocol.VERSION || in.getLong() != bot.id )
+			return;
+
+		bot.control.read( in, (type, value) ->
+		{
+			if ( type == Protocol.EVENT_JOINED )
+				bot.slot = value;
+		} );
+
+		if ( bot.control.write( out, bot.id, System.nanoTime() / 1_000_000 ) )
+			bot.channel.write( out );
+	}
+
+	/**
+	 * Clears measurements
+	 */
+	public void resetStats()
+	{
+		latency.reset();
+		updates = snapshots = incomplete = unanswered = receivedBytes = 0;
+	}
+
+	/**
+	 * Prints measurements of a step
+	 * @param seconds Time of measuring in seconds
+	 */
+	public void printStats( double seconds )
+	{
+		System.out.printf( "%6d %12.0f %12.0f %9.2f %9.2f %9.2f %10.2f %10.2f %12.1f%n",
+						   bots.size(), updates / seconds, snapshots / seconds,
+						   latency.percentile(50) / 1e6, latency.percentile(99) / 1e6, latency.percentile(99.9) / 1e6,
+						   percent( unanswered, updates ), percent( incomplete, snapshots + incomplete ),
+						   receivedBytes / seconds / 1024 );
+	}
+
+	/**
+	 * Tells the server that all bots leave and closes their channels
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		for ( Bot bot : bots )
+		{
+			// Bots leave with a single event, not waiting for the server to acknowledge it
+			bot.control.send( Protocol.EVENT_LEAVE, 0 );
+
+			if ( bot.control.write( out, bot.id, System.nanoTime() / 1_000_000 ) )
+				bot.channel.write( out );
+
+			bot.channel.close();
+		}
+
+		selector.close();
+	}
+
+	/**
+	 * Calculates percentage
+	 * @param part Part
+	 * @param whole Whole
+	 * @return Percentage of part in whole or 0 if whole is 0
+	 */
+	private static double percent( long part, long whole )
+	{
+		return whole == 0 ? 0 : 100.0 * part / whole;
+	}
+
+	/**
+	 * Starts the load generator
+	 * @param args Command line arguments - [host] [port] [-bots=N,N,...] [-rate=N] [-duration=S] [-embedded].
+	 *             With -embedded non-blocking server is started in the same process
+	 * @throws Exception
+	 */
+	public static void main( String[] args ) throws Exception
+	{
+		String host = "localhost";
+		int port = TanksServer.DEFAULT_PORT;
+		int[] steps = DEFAULT_BOTS;
+		int rate = DEFAULT_RATE;
+		int duration = DEFAULT_DURATION;
+		boolean embedded = false;
+		int numPositional = 0;
+
+		for ( String arg : args )
+			if ( arg.startsWith("-bots=") )
+			{
+				String[] counts = arg.substring(6).split( "," );
+				steps = new int[ counts.length ];
+
+				for ( int i = 0; i < counts.length; i++ )
+				{
+					steps[i] = Integer.parseInt( counts[i] );
+
+					// A step without bots has nothing to send or measure
+					if ( steps[i] < 1 )
+						throw new IllegalArgumentException( "Number of bots must be at least 1: " + counts[i] );
+				}
+			}
+			else if ( arg.startsWith("-rate=") )
+				rate = Integer.parseInt( arg.substring(6) );
+			else if ( arg.startsWith("-duration=") )
+				duration = Integer.parseInt( arg.substring(10) );
+			else if ( arg.equals("-embedded") )
+				embedded = true;
+			// First positional argument is host, second is port
+			else if ( numPositional++ == 0 )
+				host = arg;
+			else
+				port = Integer.parseInt( arg );
+
+		if ( embedded )
+			startServer( port );
+
+		LoadGenerator gen = new LoadGenerator( new InetSocketAddress(host, port), rate );
+
+		System.out.printf( "Load on %s:%d, %d updates per second per bot, latency in milliseconds%n", host, port, rate );
+		System.out.printf( "%6s %12s %12s %9s %9s %9s %10s %10s %12s%n", "bots", "updates/s", "snapshots/s",
+						   "p50", "p99", "p99.9", "unanswd %", "incompl %", "KB/s in" );
+
+		try
+		{
+			for ( int numBots : steps )
+			{
+				gen.addBots( numBots );
+				gen.run( WARMUP_TIME );
+
+				gen.resetStats();
+				gen.run( duration * 1000L );
+				gen.printStats( duration );
+			}
+		}
+		finally
+		{
+			gen.close();
+		}
+
+		System.exit( 0 );
+	}
+
+	/**
+	 * Starts non-blocking Tanks Server in a daemon thread of this process
+	 * @param port Port number for the server
+	 * @throws InterruptedException
+	 */
+	private static void startServer( int port ) throws InterruptedException
+	{
+		// Keep logging of the server out of the output
+		Logger.getLogger( TanksServer.class.getName() ).setLevel( Level.WARNING );
+
+		Thread t = new Thread( () ->
+		{
+			try
+			{
+				TanksServer.main( new String[] { "" + port, "-nio" } );
+			}
+			catch ( Exception e )
+			{
+				e.printStackTrace();
+			}
+		}, "TanksServer" );
+
+		t.setDaemon( true );
+		t.start();
+
+		// Give the server time to bind its port
+		Thread.sleep( 500 );
+	}
+}
@@ -0,0 +1,305 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.net.SocketAddress;
+import java.util.Arrays;
+
+/**
+ * Class PlayerStates - players' data on the server in arrays indexed by players' slots.
+ * Slots freed by players who left are assigned to new players first, so the arrays
+ * stay as long as the largest number of players at once. Occupied slots are also kept
+ * densely packed for iterating, and a hash index of slots by players' IDs finds players
+ * who do not know their slots yet without boxing the IDs
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class PlayerStates
+{
+	// Marker for an empty position in the index
+	private static final int EMPTY = -1;
+
+	private int capacity = 64;		// Number of slots the arrays hold
+	private int numSlots;			// Number of slots assigned so far
+	private int size;				// Number of players
+
+	long[]  id = new long[capacity];			// Player's ID or 0 if the slot is free
+	long[]  timestamp = new long[capacity];		// Time the last message of the player came
+	float[] x = new float[capacity];			// X coordinate
+	float[] y = new float[capacity];			// Y coordinate
+	float[] r = new float[capacity];			// Rotation
+	float[] d = new float[capacity];			// Direction
+	float[] s = new float[capacity];			// Speed
+	int[]   c = new int[capacity];				// Color
+	int[]   ack = new int[capacity];			// Last snapshot sequence number acknowledged by the player
+	int[]   input = new int[capacity];			// Sequence number of the player's last input applied to the tank
+	// Sequence numbers of snapshots in which x, y, r, d, s, c and input last changed, NUM_FIELDS per slot
+	int[]   changed = new int[capacity * Protocol.NUM_FIELDS];
+
+	SocketAddress[]   address = new SocketAddress[capacity];	// Address the player's messages come from
+	TankImpl[]        tank = new TankImpl[capacity];			// Tank moved by the player's inputs, null unless movement is authoritative
+	ReliableChannel[] control = new ReliableChannel[capacity];	// Reliable events to and from the player
+	InterestSet[]     interest = new InterestSet[capacity];		// Players in the area of interest of the player, kept for the next one in the slot
+	// Timers that remove players silent longer than session timeout, made once for every slot
+	TimingWheel.Timer<Integer>[] expiry = newTimers( capacity );
+
+	private int[] slots = new int[capacity];		// Occupied slots, densely packed
+	private int[] positions = new int[capacity];	// Position of the occupied slot among them
+	private int[] freeSlots = new int[capacity];	// Slots freed by players who left
+	private int   numFreeSlots;
+	private int[] index = newIndex( 2 * capacity );	// Hash index of occupied slots by players' IDs
+
+	/**
+	 * Gets number of players
+	 * @return Number of players
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets slot of the player at specified position
+	 * @param i Position from 0 to size()-1
+	 * @return Player's slot
+	 */
+	public int slotAt( int i )
+	{
+		return slots[i];
+	}
+
+	/**
+	 * Finds player's slot
+	 * @param playerID Player's ID
+	 * @return Player's slot or -1 if there is no such player
+	 */
+	public int find( long playerID )
+	{
+		int pos = indexOf( playerID );
+
+		return pos == EMPTY ? -1 : index[pos];
+	}
+
+	/**
+	 * Finds player's slot, trying the slot the player knows first
+	 * @param playerID Player's ID
+	 * @param knownSlot Slot the player sent, NO_SLOT if the player does not know it
+	 * @return Player's slot or -1 if there is no such player
+	 */
+	public int find( long playerID, int knownSlot )
+	{
+		// Player who knows its slot is found without looking up the ID, which only confirms the slot;
+		// a free slot has ID 0, which is nobody's
+		if ( knownSlot < numSlots && id[knownSlot] != 0 && id[knownSlot] == playerID )
+			return knownSlot;
+
+		return find( playerID );
+	}
+
+	/**
+	 * Adds player with all data cleared
+	 * @param playerID Player's ID, not 0
+	 * @return Player's slot or -1 if all slots are taken
+	 */
+	public int add( long playerID )
+	{
+		int slot;
+
+		if ( numFreeSlots > 0 )
+			slot = freeSlots[--numFreeSlots];
+		else if ( numSlots == Protocol.MAX_SLOTS )
+			return -1;
+		else
+		{
+			if ( numSlots == capacity )
+				grow( Math.min( 2 * capacity, Protocol.MAX_SLOTS ) );
+
+			slot = numSlots++;
+		}
+
+		id[slot] = playerID;
+		timestamp[slot] = 0;
+		x[slot] = 0;
+		y[slot] = 0;
+		r[slot] = 0;
+		d[slot] = 0;
+		s[slot] = 0;
+		c[slot] = 0;
+		ack[slot] = 0;
+		input[slot] = 0;
+		Arrays.fill( changed, slot * Protocol.NUM_FIELDS, (slot + 1) * Protocol.NUM_FIELDS, 0 );
+
+		if ( expiry[slot] == null )
+			expiry[slot] = new TimingWheel.Timer<>( slot );
+
+		slots[size] = slot;
+		positions[slot] = size;
+		size++;
+
+		// Keep the index at most half full
+		if ( 2 * size > index.length )
+			rebuildIndex( 2 * index.length );
+		else
+			insertIndex( slot );
+
+		return slot;
+	}
+
+	/**
+	 * Removes player, freeing its slot for a new one
+	 * @param slot Player's slot
+	 */
+	public void remove( int slot )
+	{
+		deleteIndex( indexOf( id[slot] ) );
+
+		// Move the last occupied slot into the freed position to keep them dense
+		int last = slots[--size];
+
+		slots[ positions[slot] ] = last;
+		positions[last] = positions[slot];
+
+		id[slot] = 0;
+		address[slot] = null;
+		tank[slot] = null;
+		control[slot] = null;
+
+		if ( numFreeSlots == freeSlots.length )
+			freeSlots = Arrays.copyOf( freeSlots, 2 * numFreeSlots );
+
+		freeSlots[numFreeSlots++] = slot;
+	}
+
+	/**
+	 * Finds position of player's slot in the hash index
+	 * @param playerID Player's ID
+	 * @return Position in the index or EMPTY if there is no such player
+	 */
+	private int indexOf( long playerID )
+	{
+		int mask = index.length - 1;
+
+		for ( int pos = PlayerTable.hash(playerID) & mask; ; pos = (pos + 1) & mask )
+		{
+			int slot = index[pos];
+
+			if ( slot == EMPTY )
+				return EMPTY;
+
+			if ( id[slot] == playerID )
+				return pos;
+		}
+	}
+
+	/**
+	 * Inserts occupied slot into the hash index
+	 * @param slot Player's slot
+	 */
+	private void insertIndex( int slot )
+	{
+		int mask = index.length - 1;
+		int pos = PlayerTable.hash( id[slot] ) & mask;
+
+		while ( index[pos] != EMPTY )
+			pos = (pos + 1) & mask;
+
+		index[pos] = slot;
+	}
+
+	/**
+	 * Deletes slot from the hash index shifting following slots back, as PlayerTable does
+	 * @param pos Position in the index to delete
+	 */
+	private void deleteIndex( int pos )
+	{
+		int mask = index.length - 1;
+		int next = pos;
+
+		index[pos] = EMPTY;
+
+		while ( true )
+		{
+			next = (next + 1) & mask;
+
+			int slot = index[next];
+
+			if ( slot == EMPTY )
+				return;
+
+			int home = PlayerTable.hash( id[slot] ) & mask;
+
+			// If slot's home position is not between freed position and its current position - move it back
+			if ( pos <= next ? (home <= pos || home > next) : (home <= pos && home > next) )
+			{
+				index[pos] = slot;
+				index[next] = EMPTY;
+				pos = next;
+			}
+		}
+	}
+
+	/**
+	 * Makes the hash index of specified length and inserts all occupied slots into it
+	 * @param length Length of the index, a power of two
+	 */
+	private void rebuildIndex( int length )
+	{
+		index = newIndex( length );
+
+		for ( int i = 0; i < size; i++ )
+			insertIndex( slots[i] );
+	}
+
+	/**
+	 * Grows arrays of slots
+	 * @param capacity New number of slots
+	 */
+	private void grow( int capacity )
+	{
+		this.capacity = capacity;
+
+		id = Arrays.copyOf( id, capacity );
+		timestamp = Arrays.copyOf( timestamp, capacity );
+		x = Arrays.copyOf( x, capacity );
+		y = Arrays.copyOf( y, capacity );
+		r = Arrays.copyOf( r, capacity );
+		d = Arrays.copyOf( d, capacity );
+		s = Arrays.copyOf( s, capacity );
+		c = Arrays.copyOf( c, capacity );
+		ack = Arrays.copyOf( ack, capacity );
+		input = Arrays.copyOf( input, capacity );
+		changed = Arrays.copyOf( changed, capacity * Protocol.NUM_FIELDS );
+		address = Arrays.copyOf( address, capacity );
+		tank = Arrays.copyOf( tank, capacity );
+		control = Arrays.copyOf( control, capacity );
+		interest = Arrays.copyOf( interest, capacity );
+		expiry = Arrays.copyOf( expiry, capacity );
+		slots = Arrays.copyOf( slots, capacity );
+		positions = Arrays.copyOf( positions, capacity );
+	}
+
+	/**
+	 * Makes empty hash index
+	 * @param length Length of the index, a power of two
+	 * @return Index with all positions empty
+	 */
+	private static int[] newIndex( int length )
+	{
+		int[] index = new int[length];
+
+		Arrays.fill( index, EMPTY );
+
+		return index;
+	}
+
+	/**
+	 * Makes array of session timers
+	 * @param length Number of slots
+	 * @return Array without timers
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static TimingWheel.Timer<Integer>[] newTimers( int length )
+	{
+		return (TimingWheel.Timer<Integer>[]) new TimingWheel.Timer<?>[length];
+	}
+}
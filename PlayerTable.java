@@ -0,0 +1,254 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.util.Arrays;
+
+/**
+ * Class PlayerTable - open addressing table from player ID to player's data.
+ * Keys are stored as primitive longs, so lookups do not box, and entries are kept
+ * densely packed so they can be iterated by index without an iterator object
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class PlayerTable<V>
+{
+	// Marker for an empty slot in the index
+	private static final int EMPTY = -1;
+
+	private long[]   keys;		// Player IDs, densely packed
+	private Object[] values;	// Player data, parallel to keys
+	private int[]    index;		// Hash index into dense arrays
+	private int      size;		// Number of players in the table
+
+	/**
+	 * Default class constructor
+	 */
+	public PlayerTable()
+	{
+		this( 16 );
+	}
+
+	/**
+	 * Class constructor
+	 * @param capacity Initial number of players the table can hold without growing
+	 */
+	public PlayerTable( int capacity )
+	{
+		capacity = Math.max( 4, capacity );
+
+		keys = new long[capacity];
+		values = new Object[capacity];
+		index = new int[ Integer.highestOneBit(capacity - 1) << 2 ];
+		Arrays.fill( index, EMPTY );
+	}
+
+	/**
+	 * Gets number of players in the table
+	 * @return Number of players
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets player ID at specified position
+	 * @param i Position from 0 to size()-1
+	 * @return Player ID
+	 */
+	public long keyAt( int i )
+	{
+		return keys[i];
+	}
+
+	/**
+	 * Gets player's data at specified position
+	 * @param i Position from 0 to size()-1
+	 * @return Player's data
+	 */
+	@SuppressWarnings( "unchecked" )
+	public V valueAt( int i )
+	{
+		return (V) values[i];
+	}
+
+	/**
+	 * Gets player's data
+	 * @param key Player ID
+	 * @return Player's data or null if there is no such player
+	 */
+	@SuppressWarnings( "unchecked" )
+	public V get( long key )
+	{
+		int pos = find( key );
+
+		return pos == EMPTY ? null : (V) values[ index[pos] ];
+	}
+
+	/**
+	 * Checks if there is a player with specified ID in the table
+	 * @param key Player ID
+	 * @return true if player is in the table
+	 */
+	public boolean containsKey( long key )
+	{
+		return find( key ) != EMPTY;
+	}
+
+	/**
+	 * Puts player's data into the table
+	 * @param key Player ID
+	 * @param value Player's data
+	 */
+	public void put( long key, V value )
+	{
+		int pos = find( key );
+
+		// If player is already in the table - replace the data
+		if ( pos != EMPTY )
+		{
+			values[ index[pos] ] = value;
+			return;
+		}
+
+		// Grow arrays when they are full
+		if ( size == keys.length )
+			grow();
+
+		keys[size] = key;
+		values[size] = value;
+		insertIndex( key, size );
+		size++;
+	}
+
+	/**
+	 * Removes player from the table
+	 * @param key Player ID
+	 * @return Removed player's data or null if there was no such player
+	 */
+	@SuppressWarnings( "unchecked" )
+	public V remove( long key )
+	{
+		int pos = find( key );
+
+		if ( pos == EMPTY )
+			return null;
+
+		int i = index[pos];
+		V removed = (V) values[i];
+
+		deleteIndex( pos );
+
+		// Move last entry into the freed position to keep arrays dense
+		int last = --size;
+
+		if ( i != last )
+		{
+			keys[i] = keys[last];
+			values[i] = values[last];
+			index[ find(keys[i]) ] = i;
+		}
+
+		values[last] = null;
+
+		return removed;
+	}
+
+	/**
+	 * Finds position of the key in the hash index
+	 * @param key Player ID
+	 * @return Position in the index or EMPTY if key is not found
+	 */
+	private int find( long key )
+	{
+		int mask = index.length - 1;
+
+		for ( int pos = hash(key) & mask; ; pos = (pos + 1) & mask )
+		{
+			int i = index[pos];
+
+			if ( i == EMPTY )
+				return EMPTY;
+
+			if ( keys[i] == key )
+				return pos;
+		}
+	}
+
+	/**
+	 * Inserts position of the key in dense arrays into the hash index
+	 * @param key Player ID
+	 * @param i Position in dense arrays
+	 */
+	private void insertIndex( long key, int i )
+	{
+		int mask = index.length - 1;
+		int pos = hash( key ) & mask;
+
+		while ( index[pos] != EMPTY )
+			pos = (pos + 1) & mask;
+
+		index[pos] = i;
+	}
+
+	/**
+	 * Deletes entry from the hash index shifting following entries back (linear probing deletion)
+	 * @param pos Position in the index to delete
+	 */
+	private void deleteIndex( int pos )
+	{
+		int mask = index.length - 1;
+		int next = pos;
+
+		index[pos] = EMPTY;
+
+		while ( true )
+		{
+			next = (next + 1) & mask;
+
+			int i = index[next];
+
+			if ( i == EMPTY )
+				return;
+
+			int home = hash( keys[i] ) & mask;
+
+			// If entry's home position is not between freed position and its current position - move it back
+			if ( pos <= next ? (home <= pos || home > next) : (home <= pos && home > next) )
+			{
+				index[pos] = i;
+				index[next] = EMPTY;
+				pos = next;
+			}
+		}
+	}
+
+	/**
+	 * Grows dense arrays and rebuilds the hash index
+	 */
+	private void grow()
+	{
+		int capacity = keys.length * 2;
+
+		keys = Arrays.copyOf( keys, capacity );
+		values = Arrays.copyOf( values, capacity );
+		index = new int[ index.length * 2 ];
+		Arrays.fill( index, EMPTY );
+
+		for ( int i = 0; i < size; i++ )
+			insertIndex( keys[i], i );
+	}
+
+	/**
+	 * Calculates hash code of the key
+	 * @param key Player ID
+	 * @return Hash code
+	 */
+	static int hash( long key )
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ *  Program Name : Tanks
+ */
+
+/**
+ * Class Prediction - inputs of the local tank the server has not acknowledged yet, each
+ * with the tank's state predicted after it. The tank moves by its inputs at once, and
+ * when the server's state after some input comes, the state predicted after that input
+ * is compared with it. If they differ, the tank takes the server's state and the inputs
+ * the server has not applied yet are replayed on top of it
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class Prediction
+{
+	// Number of remembered inputs, must be a power of two
+	private static final int CAPACITY = 256;
+	private static final int MASK = CAPACITY - 1;
+
+	// Largest differences from the server's state that are taken as the same state,
+	// server's state comes quantized
+	private static final float POSITION_TOLERANCE = Protocol.POSITION_STEP;
+	private static final float ANGLE_TOLERANCE = (float) (2 * Math.PI / 256);
+	private static final float SPEED_TOLERANCE = Protocol.SPEED_STEP;
+
+	// Ring of inputs and states predicted after them, by sequence numbers of inputs
+	private final byte[]  inputs = new byte[ CAPACITY ];
+	private final float[] xs = new float[ CAPACITY ];
+	private final float[] ys = new float[ CAPACITY ];
+	private final float[] rs = new float[ CAPACITY ];
+	private final float[] ds = new float[ CAPACITY ];
+	private final float[] ss = new float[ CAPACITY ];
+
+	private int newest;		// Sequence number of the newest input, 0 if there are none
+	private int acked;		// Sequence number of the newest input acknowledged by the server
+
+	/**
+	 * Records input of the next frame and the state predicted after it
+	 * @param input Steering of the tank during the frame
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 * @return Sequence number of the input
+	 */
+	public int record( int input, float x, float y, float r, float d, float s )
+	{
+		inputs[ ++newest & MASK ] = (byte) input;
+		set( newest, x, y, r, d, s );
+
+		return newest;
+	}
+
+	/**
+	 * Updates state predicted after input, as inputs are replayed
+	 * @param seq Sequence number of the input
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 */
+	public void set( int seq, float x, float y, float r, float d, float s )
+	{
+		int i = seq & MASK;
+
+		xs[i] = x;
+		ys[i] = y;
+		rs[i] = r;
+		ds[i] = d;
+		ss[i] = s;
+	}
+
+	/**
+	 * Gets input
+	 * @param seq Sequence number of the input, from oldest() to newest()
+	 * @return Steering of the tank during the frame
+	 */
+	public int input( int seq )
+	{
+		return inputs[ seq & MASK ];
+	}
+
+	/**
+	 * Gets sequence number of the newest input
+	 * @return Sequence number, 0 if there are no inputs
+	 */
+	public int newest()
+	{
+		return newest;
+	}
+
+	/**
+	 * Gets sequence number of the oldest remembered input not acknowledged yet
+	 * @return Sequence number, newest() + 1 if all inputs are acknowledged
+	 */
+	public int oldest()
+	{
+		return Math.max( acked + 1, newest - CAPACITY + 1 );
+	}
+
+	/**
+	 * Gets sequence number of the newest input acknowledged by the server
+	 * @return Sequence number, 0 if nothing is acknowledged
+	 */
+	public int acked()
+	{
+		return acked;
+	}
+
+	/**
+	 * Acknowledges inputs up to specified one, they are not sent or replayed any more
+	 * @param seq Sequence number of the last input the server applied
+	 */
+	public void acknowledge( int seq )
+	{
+		acked = Math.max( acked, Math.min(seq, newest) );
+	}
+
+	/**
+	 * Checks if the server's state after input is the same as predicted
+	 * @param seq Sequence number of the input
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 * @return false if they differ or the input is not remembered any more
+	 */
+	public boolean matches( int seq, float x, float y, float r, float d, float s )
+	{
+		if ( seq > newest || seq <= newest - CAPACITY )
+			return false;
+
+		int i = seq & MASK;
+
+		return Math.abs( xs[i] - x ) <= POSITION_TOLERANCE
+			&& Math.abs( ys[i] - y ) <= POSITION_TOLERANCE
+			&& Math.abs( Math.IEEEremainder(rs[i] - r, 2 * Math.PI) ) <= ANGLE_TOLERANCE
+			&& Math.abs( Math.IEEEremainder(ds[i] - d, 2 * Math.PI) ) <= ANGLE_TOLERANCE
+			&& Math.abs( ss[i] - s ) <= SPEED_TOLERANCE;
+	}
+
+	/**
+	 * Copies the newest inputs not acknowledged yet
+	 * @param dst Array to copy into, as many inputs as it fits are copied
+	 * @return Number of copied inputs, the last of them is newest()
+	 */
+	public int pending( byte[] dst )
+	{
+		int first = Math.max( oldest(), newest - dst.length + 1 );
+
+		for ( int seq = first; seq <= newest; seq++ )
+			dst[ seq - first ] = inputs[ seq & MASK ];
+
+		return newest - first + 1;
+	}
+}
@@ -0,0 +1,354 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class Protocol - constants of messages exchanged between Tanks clients and Tanks Server
+ * and quantization of tank's state for them.
+ *
+ * Every message starts with a message type byte and protocol version byte.
+ * Tank's state is quantized: x and y are shorts in steps of POSITION_STEP, rotation and
+ * direction are bytes in 1/256 of a full turn, speed is a byte in steps of SPEED_STEP.
+ *
+ * STATE (client to server):
+ *     type, version, flags (byte), player ID (long), player's slot (short, NO_SLOT until the client
+ *     knows it), acknowledged snapshot sequence number (int),
+ *     x, y (shorts), r, d, s (bytes), then color (int) if flags have STATE_JOIN, then if flags
+ *     have STATE_INPUTS: sequence number of the first input (int), number of inputs (byte) and
+ *     inputs (bytes). Input is steering of the tank during one frame: direction's ordinal
+ *     shifted left by 2 bits, or'ed with speed change's ordinal. Inputs are numbered from 1.
+ *     The client sends its color until it has acknowledged the first snapshot, so joining
+ *     is repeated until it succeeds.
+ *     A server with authoritative movement places a joining tank by its state, which comes after
+ *     the last input of the joining message, and then moves it by its inputs only. The client
+ *     sends inputs the server has not acknowledged yet, so an input lost with one message comes
+ *     again with the next one.
+ *
+ * SNAPSHOT (server to client):
+ *     Sent as one or more chunks, every chunk in its own datagram not longer than the chunk size.
+ *     Every chunk is: type, version, sequence number (int), baseline sequence number (int), flags (byte),
+ *     chunk index (byte), number of chunks (byte), length of the chunk (short), number of records (short),
+ *     time of the snapshot in server time (long), then records:
+ *     player's slot (short), changed fields mask (byte), followed by player ID (long) if the mask
+ *     has REMOVED or FIELD_C, then the fields present in the mask - x, y (shorts), r, d, s (bytes),
+ *     color (int), sequence number of the last input of the player the server applied (int), which
+ *     only a server with FLAG_AUTHORITATIVE sends.
+ *     Slot is a small number the server assigns to a player for the session. A record with color
+ *     binds the slot to the player ID on the client, records without it refer to the player by slot.
+ *     Baseline 0 means a full snapshot - players missing in it are gone. Otherwise the
+ *     snapshot carries only fields changed since the baseline, which the client has
+ *     acknowledged, and REMOVED records for players gone since the baseline.
+ *     Records never span chunks, so every received chunk can be applied on its own. A snapshot
+ *     can be acknowledged only when all its chunks are received.
+ *     A snapshot with FLAG_PARTIAL did not fit into the encoding buffer and must not be acknowledged.
+ *     FLAG_AUTHORITATIVE means the server moves tanks by players' inputs.
+ *
+ * PING (client to server):
+ *     type, version, client's time of sending in nanoseconds (long).
+ *
+ * PONG (server to client, answering PING at once):
+ *     type, version, client's time of sending the PING (long), server's time of answering
+ *     in nanoseconds (long).
+ *     Times of both sides come from their monotonic clocks, which are not related to each other
+ *     or to wall clock time. Server time in milliseconds is the time snapshots are stamped with,
+ *     and clients estimate their offset from it by PING and PONG.
+ *
+ * CONTROL (both ways):
+ *     type, version, player ID (long), sequence number of the newest event received from the
+ *     peer (int, 0 if none), bit field of received events before it (int, bit b for the event
+ *     b + 1 before the newest), number of events (byte), then events: sequence number (int),
+ *     event type (byte), value (int).
+ *     Events are numbered from 1 on each side and sent until acknowledged, and they are applied
+ *     in order of their numbers. A message with no events only acknowledges.
+ *     EVENT_LEAVE from a client means the player closed the program.
+ *     EVENT_JOINED from the server tells a joined player its slot, by which the server finds the
+ *     player's data without looking up the player ID.
+ *
+ * REJOIN (server to client):
+ *     type, version, player ID (long).
+ *     Answers STATE without STATE_JOIN of a player the server does not know, as after the player's
+ *     session expired or the server restarted. Only a joining message creates a player, so the
+ *     player's color and slot are never lost. The client forgets snapshots, slot and reliable
+ *     events of its old session and joins again with its color.
+ *
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public final class Protocol
+{
+	// Version of messages format
+	public static final byte VERSION = 7;
+
+	// Message types
+	public static final byte MSG_STATE = 1;
+	public static final byte MSG_SNAPSHOT = 2;
+	public static final byte MSG_PING = 3;
+	public static final byte MSG_PONG = 4;
+	public static final byte MSG_CONTROL = 5;
+	public static final byte MSG_REJOIN = 6;
+
+	// Control events
+	public static final int EVENT_LEAVE = 1;
+	public static final int EVENT_JOINED = 2;
+
+	// State flags
+	public static final int STATE_JOIN = 1;
+	public static final int STATE_INPUTS = 1 << 2;
+
+	// Snapshot flags
+	public static final int FLAG_PARTIAL = 1;
+	public static final int FLAG_AUTHORITATIVE = 1 << 1;
+
+	// Indexes of state fields among the fields tracked for changes, and bits of their changed fields mask
+	public static final int INDEX_X = 0;
+	public static final int INDEX_Y = 1;
+	public static final int INDEX_R = 2;
+	public static final int INDEX_D = 3;
+	public static final int INDEX_S = 4;
+	public static final int INDEX_C = 5;
+	public static final int INDEX_I = 6;
+
+	// Changed fields mask bits
+	public static final int FIELD_X = 1 << INDEX_X;
+	public static final int FIELD_Y = 1 << INDEX_Y;
+	public static final int FIELD_R = 1 << INDEX_R;
+	public static final int FIELD_D = 1 << INDEX_D;
+	public static final int FIELD_S = 1 << INDEX_S;
+	public static final int FIELD_C = 1 << INDEX_C;
+	public static final int FIELD_I = 1 << INDEX_I;
+	public static final int REMOVED = 1 << 7;
+
+	// Number of state fields tracked for changes
+	public static final int NUM_FIELDS = INDEX_I + 1;
+	// Mask with all state fields
+	public static final int ALL_FIELDS = (1 << NUM_FIELDS) - 1;
+	// Fields of a player new to the client when the server does not move tanks, which applies no inputs
+	public static final int JOIN_FIELDS = ALL_FIELDS & ~FIELD_I;
+	// Fields that carry tank's movement
+	public static final int MOVEMENT_FIELDS = FIELD_X | FIELD_Y | FIELD_R | FIELD_D | FIELD_S;
+
+	// Quantization steps of position and speed
+	public static final float POSITION_STEP = 0.25f;
+	public static final float SPEED_STEP = 0.02f;
+	// Number of quantization steps in a full turn
+	private static final int ANGLE_STEPS = 256;
+	private static final float FULL_TURN = (float) (2 * Math.PI);
+
+	// Size of STATE message without color
+	public static final int STATE_SIZE = 1 + 1 + 1 + 8 + 2 + 4 + 2*2 + 3;
+	// Maximum number of inputs in STATE message
+	public static final int MAX_INPUTS = 64;
+	// Size of STATE message with color and inputs
+	public static final int MAX_STATE_SIZE = STATE_SIZE + 4 + 4 + 1 + MAX_INPUTS;
+	// Size of SNAPSHOT chunk header
+	public static final int SNAPSHOT_HEADER_SIZE = 1 + 1 + 4 + 4 + 1 + 1 + 1 + 2 + 2 + 8;
+	// Offsets of fields in SNAPSHOT chunk header
+	public static final int SNAPSHOT_FLAGS_OFFSET = 10;
+	public static final int SNAPSHOT_CHUNK_OFFSET = 11;
+	public static final int SNAPSHOT_LENGTH_OFFSET = 13;
+	// Maximum number of chunks of one SNAPSHOT
+	public static final int MAX_CHUNKS = 255;
+	// Default maximum size of SNAPSHOT chunk, small enough to avoid IP fragmentation
+	public static final int DEFAULT_CHUNK_SIZE = 1200;
+	// Maximum size of one record in SNAPSHOT message
+	public static final int MAX_RECORD_SIZE = 2 + 1 + 8 + 2*2 + 3 + 4 + 4;
+	// Size of PING message
+	public static final int PING_SIZE = 1 + 1 + 8;
+	// Size of PONG message
+	public static final int PONG_SIZE = 1 + 1 + 8 + 8;
+	// Size of REJOIN message
+	public static final int REJOIN_SIZE = 1 + 1 + 8;
+	// Largest number of events in CONTROL message, which is also the number of
+	// events that can be unacknowledged at once
+	public static final int MAX_EVENTS = 32;
+	// Size of CONTROL message header and of one event in it
+	public static final int CONTROL_HEADER_SIZE = 1 + 1 + 8 + 4 + 4 + 1;
+	public static final int EVENT_SIZE = 4 + 1 + 4;
+	// Offset of number of events in CONTROL message
+	public static final int CONTROL_EVENTS_OFFSET = 18;
+	// Size of CONTROL message with the largest number of events
+	public static final int MAX_CONTROL_SIZE = CONTROL_HEADER_SIZE + MAX_EVENTS * EVENT_SIZE;
+	// Number of slots the server can assign
+	public static final int MAX_SLOTS = (1 << 16) - 1;
+	// Slot in STATE message of a player who does not know its slot
+	public static final int NO_SLOT = 0xFFFF;
+
+	/**
+	 * Private constructor - class has only constants and static methods
+	 */
+	private Protocol()
+	{ }
+
+	/**
+	 * Calculates size of record with specified fields
+	 * @param mask Changed fields mask
+	 * @return Size of record in bytes
+	 */
+	public static int recordSize( int mask )
+	{
+		if ( (mask & REMOVED) != 0 )
+			return 2 + 1 + 8;
+
+		int size = 2 + 1;
+
+		if ( (mask & FIELD_X) != 0 ) size += 2;
+		if ( (mask & FIELD_Y) != 0 ) size += 2;
+		if ( (mask & FIELD_R) != 0 ) size++;
+		if ( (mask & FIELD_D) != 0 ) size++;
+		if ( (mask & FIELD_S) != 0 ) size++;
+		if ( (mask & FIELD_C) != 0 ) size += 8 + 4;
+		if ( (mask & FIELD_I) != 0 ) size += 4;
+
+		return size;
+	}
+
+	/**
+	 * Writes STATE message
+	 * @param buf Buffer to write into
+	 * @param flags State flags
+	 * @param playerID Player's ID
+	 * @param slot Player's slot or NO_SLOT if it's not known
+	 * @param ack Acknowledged snapshot sequence number
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 * @param c Color, written only with STATE_JOIN flag
+	 */
+	public static void writeState( ByteBuffer buf, int flags, long playerID, int slot, int ack,
+								   float x, float y, float r, float d, float s, int c )
+	{
+		buf.put( MSG_STATE );
+		buf.put( VERSION );
+		buf.put( (byte) flags );
+		buf.putLong( playerID );
+		buf.putShort( (short) slot );
+		buf.putInt( ack );
+		buf.putShort( position(x) );
+		buf.putShort( position(y) );
+		buf.put( angle(r) );
+		buf.put( angle(d) );
+		buf.put( speed(s) );
+
+		if ( (flags & STATE_JOIN) != 0 )
+			buf.putInt( c );
+	}
+
+	/**
+	 * Writes inputs at the end of STATE message written with STATE_INPUTS flag
+	 * @param buf Buffer to write into
+	 * @param first Sequence number of the first input
+	 * @param inputs Inputs in order of their sequence numbers
+	 * @param count Number of inputs, not more than MAX_INPUTS
+	 */
+	public static void writeInputs( ByteBuffer buf, int first, byte[] inputs, int count )
+	{
+		buf.putInt( first );
+		buf.put( (byte) count );
+		buf.put( inputs, 0, count );
+	}
+
+	/**
+	 * Writes header of CONTROL message with no events, events are written after it
+	 * and their number is filled in at CONTROL_EVENTS_OFFSET
+	 * @param buf Buffer to write into
+	 * @param playerID Player's ID
+	 * @param ack Sequence number of the newest received event
+	 * @param ackBits Bit field of received events before it
+	 */
+	public static void writeControl( ByteBuffer buf, long playerID, int ack, int ackBits )
+	{
+		buf.put( MSG_CONTROL );
+		buf.put( VERSION );
+		buf.putLong( playerID );
+		buf.putInt( ack );
+		buf.putInt( ackBits );
+		buf.put( (byte) 0 );
+	}
+
+	/**
+	 * Writes event of CONTROL message
+	 * @param buf Buffer to write into
+	 * @param seq Sequence number of the event
+	 * @param type Event type
+	 * @param value Event's value
+	 */
+	public static void writeEvent( ByteBuffer buf, int seq, int type, int value )
+	{
+		buf.putInt( seq );
+		buf.put( (byte) type );
+		buf.putInt( value );
+	}
+
+	/**
+	 * Gets current time of the monotonic clock messages are stamped by
+	 * @return Time in milliseconds, not related to wall clock time
+	 */
+	public static long time()
+	{
+		return System.nanoTime() / 1_000_000;
+	}
+
+	/**
+	 * Quantizes coordinate, clamping it into the range of short
+	 * @param v Coordinate
+	 * @return Quantized coordinate
+	 */
+	public static short position( float v )
+	{
+		return (short) Math.max( Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(v / POSITION_STEP)) );
+	}
+
+	/**
+	 * Restores quantized coordinate
+	 * @param q Quantized coordinate
+	 * @return Coordinate
+	 */
+	public static float position( short q )
+	{
+		return q * POSITION_STEP;
+	}
+
+	/**
+	 * Quantizes angle of any number of turns
+	 * @param a Angle in radians
+	 * @return Quantized angle
+	 */
+	public static byte angle( float a )
+	{
+		return (byte) Math.round( a / FULL_TURN * ANGLE_STEPS );
+	}
+
+	/**
+	 * Restores quantized angle
+	 * @param q Quantized angle
+	 * @return Angle in radians from 0 to 2*PI
+	 */
+	public static float angle( byte q )
+	{
+		return (q & 0xFF) * FULL_TURN / ANGLE_STEPS;
+	}
+
+	/**
+	 * Quantizes speed, clamping it into the range of byte
+	 * @param s Speed
+	 * @return Quantized speed
+	 */
+	public static byte speed( float s )
+	{
+		return (byte) Math.max( -Byte.MAX_VALUE, Math.min(Byte.MAX_VALUE, Math.round(s / SPEED_STEP)) );
+	}
+
+	/**
+	 * Restores quantized speed
+	 * @param q Quantized speed
+	 * @return Speed
+	 */
+	public static float speed( byte q )
+	{
+		return q * SPEED_STEP;
+	}
+}
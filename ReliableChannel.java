@@ -0,0 +1,253 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class ReliableChannel - reliable ordered delivery of control events between a client and
+ * Tanks Server, over the same UDP channel as the unreliable states and snapshots. Every event
+ * gets a sequence number and is sent until the peer acknowledges it. Every CONTROL message
+ * acknowledges the newest received event and, in a bit field, the 32 events before it, so
+ * only the events actually lost are sent again. Received events are delivered in order of
+ * their sequence numbers, with events that came ahead of a lost one held back until it comes.
+ * The channel is used by one thread only
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class ReliableChannel
+{
+	// Number of events that can be unacknowledged at once, must be a power of two
+	private static final int WINDOW = Protocol.MAX_EVENTS;
+	private static final int MASK = WINDOW - 1;
+	// Time in milliseconds after which an unacknowledged event is sent again
+	public static final int RESEND_INTERVAL = 100;
+
+	/**
+	 * Interface Listener - receiver of delivered events
+	 */
+	public interface Listener
+	{
+		/**
+		 * Gets delivered event
+		 * @param type Event type
+		 * @param value Event's value
+		 */
+		void event( int type, int value );
+	}
+
+	// Ring of sent events by sequence numbers
+	private final byte[] outTypes = new byte[WINDOW];
+	private final int[]  outValues = new int[WINDOW];
+	private final long[] outSentAt = new long[WINDOW];	// Time of the last sending, 0 if never sent
+	private final boolean[] outAcked = new boolean[WINDOW];
+	private int nextSeq = 1;		// Sequence number of the next event to send
+	private int oldestUnacked = 1;	// Sequence number of the oldest unacknowledged event
+
+	// Ring of received events not delivered yet by sequence numbers
+	private final byte[] inTypes = new byte[WINDOW];
+	private final int[]  inValues = new int[WINDOW];
+	private final boolean[] inReceived = new boolean[WINDOW];
+	private int nextDelivered = 1;	// Sequence number of the next event to deliver
+	private int newestReceived;		// Sequence number of the newest received event, 0 if none
+	private boolean ackOwed;		// If the peer has to be told about received events
+
+	/**
+	 * Queues event to send
+	 * @param type Event type
+	 * @param value Event's value
+	 * @return false if too many events are unacknowledged
+	 */
+	public boolean send( int type, int value )
+	{
+		if ( nextSeq - oldestUnacked >= WINDOW )
+			return false;
+
+		int i = nextSeq++ & MASK;
+		outTypes[i] = (byte) type;
+		outValues[i] = value;
+		outSentAt[i] = 0;
+		outAcked[i] = false;
+
+		return true;
+	}
+
+	/**
+	 * Checks if all sent events are acknowledged
+	 * @return true if there is nothing to send again
+	 */
+	public boolean isIdle()
+	{
+		return oldestUnacked == nextSeq;
+	}
+
+	/**
+	 * Gets time the next CONTROL message is due
+	 * @param now Current time in milliseconds
+	 * @return Time in milliseconds, Long.MAX_VALUE if there is nothing to send
+	 */
+	public long nextWrite( long now )
+	{
+		long next = ackOwed ? now : Long.MAX_VALUE;
+
+		for ( int seq = oldestUnacked; seq != nextSeq; seq++ )
+		{
+			int i = seq & MASK;
+
+			if ( !outAcked[i] )
+				next = Math.min( next, outSentAt[i] == 0 ? now : outSentAt[i] + RESEND_INTERVAL );
+		}
+
+		return next;
+	}
+
+	/**
+	 * Writes CONTROL message with acknowledgments of received events and events
+	 * never sent or not acknowledged for longer than resend interval
+	 * @param out Buffer to write into, ready to be sent after that
+	 * @param playerID ID of the player the channel belongs to
+	 * @param now Current time in milliseconds
+	 * @return false if there is nothing to send
+	 */
+	public boolean write( ByteBuffer out, long playerID, long now )
+	{
+		out.clear();
+		Protocol.writeControl( out, playerID, newestReceived, ackBits() );
+
+		int numEvents = 0;
+
+		for ( int seq = oldestUnacked; seq != nextSeq; seq++ )
+		{
+			int i = seq & MASK;
+
+			if ( outAcked[i] || (outSentAt[i] != 0 && now - outSentAt[i] < RESEND_INTERVAL) )
+				continue;
+
+			Protocol.writeEvent( out, seq, outTypes[i], outValues[i] );
+			outSentAt[i] = now;
+			numEvents++;
+		}
+
+		out.put( Protocol.CONTROL_EVENTS_OFFSET, (byte) numEvents );
+		out.flip();
+
+		boolean res = numEvents > 0 || ackOwed;
+		ackOwed = false;
+
+		return res;
+	}
+
+	/**
+	 * Applies received CONTROL message, whose type, version and player ID are already read
+	 * @param in Buffer with the message
+	 * @param listener Receiver of events delivered in order
+	 */
+	public void read( ByteBuffer in, Listener listener )
+	{
+		int ack = in.getInt();
+		int bits = in.getInt();
+		int numEvents = in.get() & 0xFF;
+
+		// Mark acknowledged events, the newest one and those in the bit field
+		acknowledge( ack );
+
+		for ( int b = 0; b < 32; b++ )
+			if ( (bits & (1 << b)) != 0 )
+				acknowledge( ack - 1 - b );
+
+		while ( oldestUnacked != nextSeq && outAcked[oldestUnacked & MASK] )
+			oldestUnacked++;
+
+		while ( numEvents-- > 0 )
+		{
+			int seq = in.getInt();
+			int type = in.get();
+			int value = in.getInt();
+
+			// Every received event is acknowledged, again if it's a duplicate
+			ackOwed = true;
+
+			// Ignore duplicates and events too far ahead to hold
+			if ( seq < nextDelivered || seq >= nextDelivered + WINDOW )
+				continue;
+
+			int i = seq & MASK;
+			inTypes[i] = (byte) type;
+			inValues[i] = value;
+			inReceived[i] = true;
+			newestReceived = Math.max( newestReceived, seq );
+		}
+
+		// Deliver events that are next in order
+		while ( inReceived[nextDelivered & MASK] )
+		{
+			int i = nextDelivered++ & MASK;
+			inReceived[i] = false;
+			listener.event( inTypes[i], inValues[i] );
+		}
+	}
+
+	/**
+	 * Marks sent event as acknowledged
+	 * @param seq Sequence number of the event
+	 */
+	private void acknowledge( int seq )
+	{
+		if ( seq >= oldestUnacked && seq < nextSeq )
+			outAcked[seq & MASK] = true;
+	}
+
+	/**
+	 * Gets bit field of received events before the newest one
+	 * @return Bit b is set if event newestReceived - 1 - b is received
+	 */
+	private int ackBits()
+	{
+		int bits = 0;
+
+		for ( int b = 0; b < 32; b++ )
+		{
+			int seq = newestReceived - 1 - b;
+
+			if ( seq <= 0 )
+				break;
+
+			if ( seq < nextDelivered || inReceived[seq & MASK] )
+				bits |= 1 << b;
+		}
+
+		return bits;
+	}
+
+	/**
+	 * Writes acknowledgment of all events of CONTROL message from a peer that has no channel,
+	 * such as a player who already left. Events are acknowledged without being delivered
+	 * @param in Buffer with the message, whose type, version and player ID are already read
+	 * @param out Buffer to write into, ready to be sent after that
+	 * @param playerID ID of the player the message came from
+	 */
+	public static void acknowledgeAll( ByteBuffer in, ByteBuffer out, long playerID )
+	{
+		in.getInt();
+		in.getInt();
+		int numEvents = in.get() & 0xFF;
+		int pos = in.position();
+		int newest = 0;
+		int bits = 0;
+
+		for ( int e = 0; e < numEvents; e++ )
+			newest = Math.max( newest, in.getInt( pos + e * Protocol.EVENT_SIZE ) );
+
+		for ( int e = 0; e < numEvents; e++ )
+		{
+			int b = newest - 1 - in.getInt( pos + e * Protocol.EVENT_SIZE );
+
+			if ( b >= 0 && b < 32 )
+				bits |= 1 << b;
+		}
+
+		out.clear();
+		Protocol.writeControl( out, playerID, newest, bits );
+		out.flip();
+	}
+}
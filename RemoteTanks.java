@@ -0,0 +1,275 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Class RemoteTanks - tanks of remote players, kept in parallel arrays indexed by players'
+ * slots instead of an object per tank. All tanks are moved in one pass and drawn in another,
+ * and a tank costs only its elements of the arrays and the ring of its received states.
+ * New views of the world are applied in one pass over the slots that changed in them
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class RemoteTanks
+{
+	// Longest time in milliseconds remote tank's movement is extrapolated past its newest state,
+	// long enough for a tank moving straight whose states come only by the longest heartbeat of dead reckoning
+	private final static int MAX_EXTRAPOLATION = DeadReckoning.MAX_HEARTBEAT;
+
+	private int capacity = 64;		// Number of slots the arrays hold
+	private int version;			// Version of the last applied view of the world
+
+	long[]  id = new long[capacity];			// Player's ID or 0 if there is no tank in the slot
+	long[]  timestamp = new long[capacity];	// Time of the newest captured state, 0 if none
+	float[] x = new float[capacity];			// X coordinate
+	float[] y = new float[capacity];			// Y coordinate
+	float[] r = new float[capacity];			// Rotation
+	float[] d = new float[capacity];			// Direction
+	float[] s = new float[capacity];			// Speed
+	int[]   c = new int[capacity];				// Color
+
+	// State before the last update, drawn from when rendering falls between updates
+	private float[] px = new float[capacity];
+	private float[] py = new float[capacity];
+	private float[] pr = new float[capacity];
+	// If the tank was moved to a received state, false until its first one
+	private boolean[] shown = new boolean[capacity];
+
+	// Received states of all tanks
+	private final InterpolationBuffer history = new InterpolationBuffer( capacity );
+	// Screen area changed since it was last taken, empty if none
+	private final Rectangle dirty = new Rectangle();
+
+	/**
+	 * Gets number of slots the arrays hold
+	 * @return Number of slots, every slot from capacity on is free
+	 */
+	public int capacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Gets ID of the player whose tank is in the slot
+	 * @param slot Player's slot
+	 * @return Player's ID or 0 if the slot is free
+	 */
+	public long id( int slot )
+	{
+		return slot < capacity ? id[slot] : 0;
+	}
+
+	/**
+	 * Applies the latest view of the world: removes tanks of players who left, creates tanks
+	 * of players who appeared and captures new states. If no view was missed since the last
+	 * applied one, only slots changed in the view are visited, otherwise all of them are
+	 * @param view The latest view of the world
+	 * @param playerID ID of the current player, whose tank is not remote
+	 * @return false if the view was applied already
+	 */
+	public boolean apply( WorldView view, long playerID )
+	{
+		if ( view.version == version )
+			return false;
+
+		if ( view.version == version + 1 )
+			for ( int k = 0; k < view.numChanged; k++ )
+				apply( view, view.changed[k], playerID );
+		else
+			for ( int i = 0; i < Math.max( view.size, capacity ); i++ )
+				apply( view, i, playerID );
+
+		version = view.version;
+		return true;
+	}
+
+	/**
+	 * Applies slot of the latest view of the world
+	 * @param view The latest view of the world
+	 * @param slot Player's slot
+	 * @param playerID ID of the current player
+	 */
+	private void apply( WorldView view, int slot, long playerID )
+	{
+		long viewID = slot < view.size && slot != view.ownSlot && view.id[slot] != playerID ? view.id[slot] : 0;
+
+		// The slot is freed or taken by another player
+		if ( id( slot ) != viewID )
+		{
+			if ( id( slot ) != 0 )
+				remove( slot );
+
+			if ( viewID != 0 )
+				add( slot, viewID );
+		}
+
+		if ( viewID != 0 )
+			capture( view, slot );
+	}
+
+	/**
+	 * Creates tank of remote player, kept out of the arena until its first state is captured
+	 * @param slot Player's slot
+	 * @param playerID Player's ID
+	 */
+	public void add( int slot, long playerID )
+	{
+		if ( slot >= capacity )
+			grow( Math.max(slot + 1, 2 * capacity) );
+
+		id[slot] = playerID;
+		timestamp[slot] = 0;
+		x[slot] = px[slot] = TanksFrame.WIDTH;
+		y[slot] = py[slot] = TanksFrame.HEIGHT;
+		r[slot] = pr[slot] = 0;
+		d[slot] = 0;
+		s[slot] = 0;
+		c[slot] = TanksFrame.DEFAULT_REMOTE_COLOR.getRGB();
+		shown[slot] = false;
+		history.clear( slot );
+	}
+
+	/**
+	 * Removes tank of remote player who left the game
+	 * @param slot Player's slot
+	 */
+	public void remove( int slot )
+	{
+		id[slot] = 0;
+		TankImpl.ATLAS.addBounds( dirty, x[slot], y[slot] );
+	}
+
+	/**
+	 * Captures the latest state of remote tank from the view of the world
+	 * @param view The latest view of the world
+	 * @param slot Player's slot, holding the same player in the view and in the store
+	 */
+	private void capture( WorldView view, int slot )
+	{
+		// If there is a newer state - keep it for interpolation
+		if ( view.timestamp[slot] > timestamp[slot] )
+		{
+			history.add( slot, view.timestamp[slot], view.x[slot], view.y[slot], view.r[slot], view.d[slot], view.s[slot] );
+
+			if ( c[slot] != view.c[slot] )
+				TankImpl.ATLAS.addBounds( dirty, x[slot], y[slot] );
+
+			c[slot] = view.c[slot];
+			timestamp[slot] = view.timestamp[slot];
+		}
+	}
+
+	/**
+	 * Moves all remote tanks to their states interpolated between received ones, a little behind real time
+	 * @param time Server time to sample states at in milliseconds
+	 */
+	public void update( long time )
+	{
+		for ( int i = 0; i < capacity; i++ )
+		{
+			if ( id[i] == 0 )
+				continue;
+
+			px[i] = x[i];
+			py[i] = y[i];
+			pr[i] = r[i];
+
+			if ( history.sample( i, time, MAX_EXTRAPOLATION ) )
+			{
+				x[i] = history.x;
+				y[i] = history.y;
+				r[i] = history.r;
+				d[i] = history.d;
+				s[i] = history.s;
+
+				// Tank's first state has no previous one to be drawn from, so the tank appears in place
+				if ( !shown[i] )
+				{
+					shown[i] = true;
+					px[i] = x[i];
+					py[i] = y[i];
+					pr[i] = r[i];
+					TankImpl.ATLAS.addBounds( dirty, x[i], y[i] );
+				}
+			}
+
+			// Where the tank was drawn and where it will be
+			if ( x[i] != px[i] || y[i] != py[i] || r[i] != pr[i] )
+			{
+				TankImpl.ATLAS.addBounds( dirty, px[i], py[i] );
+				TankImpl.ATLAS.addBounds( dirty, x[i], y[i] );
+			}
+		}
+	}
+
+	/**
+	 * Adds remote tanks to collision detection, as tanks the game does not move.
+	 * Tanks waiting for their first state are outside the arena and not added
+	 * @param collisions Collision detection to add to
+	 */
+	public void addTo( TankCollisions collisions )
+	{
+		for ( int i = 0; i < capacity; i++ )
+			if ( id[i] != 0 && timestamp[i] != 0 )
+				collisions.add( x[i], y[i], r[i], false );
+	}
+
+	/**
+	 * Adds screen area changed since the last call: where tanks moved from and to, where
+	 * removed ones were and where colors changed
+	 * @param area Rectangle to add to, empty if nothing was added to it yet
+	 */
+	public void addDirty( Rectangle area )
+	{
+		if ( dirty.isEmpty() )
+			return;
+
+		if ( area.isEmpty() )
+			area.setBounds( dirty );
+		else
+			area.add( dirty );
+
+		dirty.setBounds( 0, 0, 0, 0 );
+	}
+
+	/**
+	 * Draws all remote tanks between their previous and current states
+	 * @param g Graphics context
+	 * @param alpha Fraction of the time from the previous update to the next one, 1 for the current state
+	 */
+	public void draw( Graphics2D g, float alpha )
+	{
+		// Rotation is interpolated the shorter way round, as received states are
+		for ( int i = 0; i < capacity; i++ )
+			if ( id[i] != 0 )
+				TankImpl.ATLAS.draw( g, c[i], InterpolationBuffer.lerpAngle( pr[i], r[i], alpha ),
+									 px[i] + (x[i] - px[i]) * alpha, py[i] + (y[i] - py[i]) * alpha, s[i] );
+	}
+
+	/**
+	 * Grows arrays of the store
+	 * @param capacity New number of slots
+	 */
+	private void grow( int capacity )
+	{
+		this.capacity = capacity;
+
+		id = Arrays.copyOf( id, capacity );
+		timestamp = Arrays.copyOf( timestamp, capacity );
+		x = Arrays.copyOf( x, capacity );
+		y = Arrays.copyOf( y, capacity );
+		r = Arrays.copyOf( r, capacity );
+		d = Arrays.copyOf( d, capacity );
+		s = Arrays.copyOf( s, capacity );
+		c = Arrays.copyOf( c, capacity );
+		px = Arrays.copyOf( px, capacity );
+		py = Arrays.copyOf( py, capacity );
+		pr = Arrays.copyOf( pr, capacity );
+		shown = Arrays.copyOf( shown, capacity );
+		history.grow( capacity );
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class ServerBenchmark - measures packet handling of Tanks Server.
+ * One operation is a round in which every player sends an update, the server
+ * commits the changes and encodes a snapshot for every player. Compares clients
+ * that never acknowledge snapshots, and so get full snapshots, with clients
+ * that acknowledge the previous snapshot and get deltas against it, and clients that
+ * get deltas with only the players within the area of interest of their tanks.
+ * The server's whole loop is measured over loopback sockets too: receiving datagrams,
+ * handling them and sending snapshots, answering every batch and in tick mode
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class ServerBenchmark
+{
+	// Address the benchmark messages come from
+	private static final InetSocketAddress ADDRESS = new InetSocketAddress( "localhost", TanksServer.DEFAULT_PORT );
+	// Interest radius in area of interest benchmarks
+	private static final float INTEREST_RADIUS = 200;
+	// Average area of the arena per player in area of interest benchmarks
+	private static final float AREA_PER_PLAYER = 60 * 60;
+
+	private static float[] posX;	// X coordinates of players' tanks
+	private static float[] posY;	// Y coordinates of players' tanks
+
+	/**
+	 * Starts the benchmark
+	 * @param args Command line arguments - numbers of players to benchmark with
+	 * @throws Exception
+	 */
+	public static void main( String[] args ) throws Exception
+	{
+		int[] playerCounts = { 2, 10, 100, 1000, 10000 };
+		int[] interestCounts = { 1000, 5000, 10000 };
+		int[] loopbackCounts = { 1, 10, 200 };
+
+		// Keep per-packet logging of the server out of measurements
+		Logger.getLogger( TanksServer.class.getName() ).setLevel( Level.WARNING );
+
+		// If numbers of players are specified through command line
+		if ( args.length > 0 )
+		{
+			playerCounts = new int[ args.length ];
+
+			for ( int i = 0; i < args.length; i++ )
+				playerCounts[i] = Integer.parseInt( args[i] );
+
+			interestCounts = playerCounts;
+			loopbackCounts = playerCounts;
+		}
+
+		for ( int numPlayers : playerCounts )
+		{
+			rounds( numPlayers, numPlayers, false, 0 );
+			rounds( numPlayers, numPlayers, true, 0 );
+			rounds( numPlayers, numPlayers / 10, true, 0 );
+		}
+
+		for ( int numPlayers : interestCounts )
+			rounds( numPlayers, numPlayers / 10, true, INTEREST_RADIUS );
+
+		for ( int numPlayers : loopbackCounts )
+		{
+			loopback( numPlayers, false );
+			loopback( numPlayers, true );
+		}
+	}
+
+	/**
+	 * Benchmarks rounds of updates and responses
+	 * @param numPlayers Number of players in the arena
+	 * @param numMoving Number of players whose tanks move every round
+	 * @param acked If players acknowledge the previous snapshot
+	 * @param radius Interest radius or 0 to send the whole arena
+	 * @throws Exception
+	 */
+	private static void rounds( int numPlayers, int numMoving, boolean acked, float radius ) throws Exception
+	{
+		fillPlayers( numPlayers, radius );
+
+		BufferPool pool = new BufferPool( TanksServer.MAX_DATAGRAM, 1 );
+		ByteBuffer in = pool.acquire();
+		long[] round = { 0 };
+		long[] bytes = { 0 };
+
+		String name = (radius > 0 ? "interest " : "") + (acked ? "delta" : "full")
+					  + " round, players=" + numPlayers + ", moving=" + numMoving;
+
+		Benchmark.Result res = Benchmark.run( name, () ->
+		{
+			int ack = acked ? TanksServer.snapshot.seq() : 0;
+
+			round[0]++;
+
+			// Apply updates of all players
+			for ( int i = 1; i <= numPlayers; i++ )
+			{
+				// Moving tanks drive in circles
+				if ( i <= numMoving )
+				{
+					posX[i] += (float) Math.sin( round[0] * 0.05 + i );
+					posY[i] += (float) Math.cos( round[0] * 0.05 + i );
+				}
+
+				// Players joined in order, so each one knows its slot
+				Protocol.writeState( in.clear(), 0, i, i - 1, ack, posX[i], posY[i], 0.5f, 0.5f, 1, 0 );
+				in.flip();
+
+				TanksServer.update( in, ADDRESS );
+			}
+
+			// Commit changes once and encode snapshot for every player
+			TanksServer.snapshot.commit();
+
+			for ( int i = 0; i < numPlayers; i++ )
+				bytes[0] += TanksServer.snapshotFor( TanksServer.players.slotAt(i) ).remaining();
+		} );
+
+		// Number of measured and warm up rounds is not known here, so report bytes per response on average
+		System.out.printf( "%-48s %14.1f bytes per response%n", "", (double) bytes[0] / round[0] / numPlayers );
+		Benchmark.sink += (long) res.opsPerSec;
+	}
+
+	/**
+	 * Benchmarks rounds of the server's loop over loopback sockets. In every round each client
+	 * sends its state and an acknowledgment of the server's events, as clients in the game do,
+	 * the server reads and handles all datagrams and sends snapshots, either answering the batch
+	 * or in its tick, and clients read them. Clients' channels are connected to the server, so
+	 * they neither allocate addresses nor get datagrams of other clients, and all allocation
+	 * measured is the server's
+	 * @param numPlayers Number of clients, every one with its own socket
+	 * @param tick If the server pushes snapshots in its tick instead of answering the batch
+	 * @throws Exception
+	 */
+	private static void loopback( int numPlayers, boolean tick ) throws Exception
+	{
+		TanksServer.interestRadius = 0;
+		TanksServer.reset( new BufferPool(TanksServer.MAX_DATAGRAM, 2) );
+
+		DatagramChannel server = DatagramChannel.open();
+		DatagramChannel[] clients = new DatagramChannel[ numPlayers ];
+		ByteBuffer out = ByteBuffer.allocateDirect( Math.max(Protocol.MAX_STATE_SIZE, Protocol.MAX_CONTROL_SIZE) );
+		ByteBuffer in = ByteBuffer.allocateDirect( TanksServer.MAX_DATAGRAM );
+		int[] slots = new int[ numPlayers ];
+
+		try
+		{
+			// Room for datagrams of all clients in a round
+			server.setOption( StandardSocketOptions.SO_RCVBUF, 4 << 20 );
+			server.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+			server.configureBlocking( false );
+
+			// Every client joins with its color
+			for ( int i = 0; i < numPlayers; i++ )
+			{
+				clients[i] = DatagramChannel.open();
+				clients[i].bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+				clients[i].connect( server.getLocalAddress() );
+				clients[i].configureBlocking( false );
+
+				Protocol.writeState( out.clear(), Protocol.STATE_JOIN, i + 1, Protocol.NO_SLOT, 0, 100, 100, 0.5f, 0.5f, 1, 0xFF0000 );
+				clients[i].write( out.flip() );
+			}
+
+			while ( TanksServer.handleBatch( server, true ) > 0 )
+				drain( clients, in );
+
+			drain( clients, in );
+
+			// Players learn their slots from the server's events, which they acknowledge in every round
+			for ( int i = 0; i < numPlayers; i++ )
+				slots[i] = TanksServer.players.find( i + 1 );
+
+			long[] round = { 0 };
+			long[] received = { 0 };
+
+			String name = "loopback " + (tick ? "tick" : "answered") + " round, players=" + numPlayers;
+
+			Benchmark.Result res = Benchmark.run( name, () ->
+			{
+				int ack = TanksServer.snapshot.seq();
+
+				round[0]++;
+
+				for ( int i = 0; i < numPlayers; i++ )
+				{
+					// Tanks drive in circles
+					float x = 100 + 50 * (float) Math.sin( round[0] * 0.05 + i );
+					float y = 100 + 50 * (float) Math.cos( round[0] * 0.05 + i );
+
+					Protocol.writeState( out.clear(), 0, i + 1, slots[i], ack, x, y, 0.5f, 0.5f, 1, 0 );
+					clients[i].write( out.flip() );
+
+					Protocol.writeControl( out.clear(), i + 1, 1, 0 );
+					clients[i].write( out.flip() );
+				}
+
+				// Read all datagrams of the round, in more batches if they do not fit into one
+				int numRead;
+
+				while ( (numRead = TanksServer.handleBatch( server, !tick )) > 0 )
+					received[0] += numRead;
+
+				if ( tick )
+					TanksServer.tick( server );
+
+				drain( clients, in );
+			} );
+
+			// Number of measured and warm up rounds is not known here, so report on average per received datagram
+			double perRound = (double) received[0] / round[0];
+
+			System.out.printf( "%-48s %14.1f datagrams/s %8.1f B/datagram%n", "",
+							   res.opsPerSec * perRound, res.bytesPerOp / perRound );
+		}
+		finally
+		{
+			server.close();
+
+			for ( DatagramChannel client : clients )
+				if ( client != null )
+					client.close();
+		}
+	}
+
+	/**
+	 * Reads all datagrams waiting for clients
+	 * @param clients Clients' connected non-blocking channels
+	 * @param in Buffer to read into
+	 * @throws Exception
+	 */
+	private static void drain( DatagramChannel[] clients, ByteBuffer in ) throws Exception
+	{
+		for ( DatagramChannel client : clients )
+			while ( client.read( in.clear() ) > 0 )
+				Benchmark.sink++;
+	}
+
+	/**
+	 * Fills server's table with players placed randomly in the arena
+	 * @param numPlayers Number of players
+	 * @param radius Interest radius or 0 to send the whole arena
+	 */
+	private static void fillPlayers( int numPlayers, float radius )
+	{
+		TanksServer.interestRadius = radius;
+		TanksServer.reset( new BufferPool(TanksServer.MAX_DATAGRAM, 8) );
+
+		// Arena size for area of interest grows with number of players
+		float width = TanksFrame.WIDTH, height = TanksFrame.HEIGHT;
+
+		if ( radius > 0 )
+		{
+			width = height = (float) Math.sqrt( numPlayers * AREA_PER_PLAYER );
+			TanksServer.grid = new SpatialGrid( width, height, radius );
+		}
+
+		Random random = new Random( 1 );
+		ByteBuffer in = ByteBuffer.allocate( Protocol.MAX_STATE_SIZE );
+
+		posX = new float[ numPlayers + 1 ];
+		posY = new float[ numPlayers + 1 ];
+
+		for ( int i = 1; i <= numPlayers; i++ )
+		{
+			posX[i] = random.nextFloat() * width;
+			posY[i] = random.nextFloat() * height;
+
+			Protocol.writeState( in.clear(), Protocol.STATE_JOIN, i, Protocol.NO_SLOT, 0, posX[i], posY[i], 0.5f, 0.5f, 1, 0 );
+			in.flip();
+
+			TanksServer.update( in, ADDRESS );
+		}
+
+		TanksServer.snapshot.commit();
+	}
+}
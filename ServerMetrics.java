@@ -0,0 +1,36 @@
+/**
+ *  Program Name : Tanks
+ */
+
+/**
+ * Class ServerMetrics - counters of Tanks Server activity since the last report
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class ServerMetrics
+{
+	long received;		// Number of received datagrams
+	long pings;			// Number of answered pings
+	long sent;			// Number of sent datagrams
+	long sentBytes;		// Number of sent bytes
+	long joined;		// Number of players who joined
+	long left;			// Number of players who closed the program
+	long expired;		// Number of players removed after being silent longer than session timeout
+
+	/**
+	 * Gets counters as text and resets them
+	 * @param numPlayers Current number of players
+	 * @return Text with counters
+	 */
+	public String report( int numPlayers )
+	{
+		String res = "players: " + numPlayers + ", joined: " + joined + ", left: " + left
+					 + ", expired: " + expired + ", received: " + received + ", pings: " + pings
+					 + ", sent: " + sent + " (" + sentBytes + " bytes)";
+
+		received = pings = sent = sentBytes = 0;
+		joined = left = expired = 0;
+
+		return res;
+	}
+}
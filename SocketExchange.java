@@ -14,7 +14,4 @@ public interface SocketExchange
 {	
 	// Sends Tank's update to Tanks Server
 	void sendUpdate( ActionEvent e );
-	
-	// Gets update from remote Tank and displays it
-	void captureState( ActionEvent e );
 }
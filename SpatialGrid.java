@@ -0,0 +1,236 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.util.Arrays;
+
+/**
+ * Class SpatialGrid - uniform grid of cells over the arena for finding objects near a point.
+ * Objects are linked into the list of the cell they are in, so moving an object costs
+ * O(1) and re-links it only when it crosses into another cell. A radius query visits
+ * only the cells overlapping the radius. Coordinates outside the grid are clamped
+ * into the border cells. Objects are numbered, as players by their slots, and linked
+ * through arrays indexed by their numbers
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class SpatialGrid
+{
+	// Marker for no object
+	private static final int NONE = -1;
+
+	private final float cellSize;	// Width and height of one cell
+	private final int columns;		// Number of columns of cells
+	private final int rows;			// Number of rows of cells
+	private final int[] heads;		// First object in every cell
+
+	private int capacity = 64;							// Number of objects the arrays hold
+	private float[] gridX = new float[capacity];		// X coordinate the object is placed at
+	private float[] gridY = new float[capacity];		// Y coordinate the object is placed at
+	private int[]   cell = filled( capacity );			// Cell the object is in or NONE if it's not in the grid
+	private int[]   prevInCell = new int[capacity];		// Previous object in the same cell
+	private int[]   nextInCell = new int[capacity];		// Next object in the same cell
+
+	private int[] results = new int[64];	// Objects found by the last query
+	private int numObjects;					// Number of objects in the grid
+
+	/**
+	 * Class constructor
+	 * @param width Width of the area covered by the grid
+	 * @param height Height of the area covered by the grid
+	 * @param cellSize Width and height of one cell
+	 */
+	public SpatialGrid( float width, float height, float cellSize )
+	{
+		if ( cellSize <= 0 )
+			throw new IllegalArgumentException();
+
+		this.cellSize = cellSize;
+		columns = Math.max( 1, (int) Math.ceil(width / cellSize) );
+		rows = Math.max( 1, (int) Math.ceil(height / cellSize) );
+		heads = filled( columns * rows );
+	}
+
+	/**
+	 * Gets number of objects in the grid
+	 * @return Number of objects
+	 */
+	public int size()
+	{
+		return numObjects;
+	}
+
+	/**
+	 * Places object at specified coordinates, adding it to the grid if it's not there yet
+	 * @param object Number of the object, such as player's slot
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 */
+	public void move( int object, float x, float y )
+	{
+		if ( object >= capacity )
+			grow( Math.max(2 * capacity, object + 1) );
+
+		gridX[object] = x;
+		gridY[object] = y;
+
+		int cell = cellOf( x, y );
+
+		// If object stays in the same cell - nothing to re-link
+		if ( cell == this.cell[object] )
+			return;
+
+		unlink( object );
+
+		// Link object as the first one in its new cell
+		this.cell[object] = cell;
+		prevInCell[object] = NONE;
+		nextInCell[object] = heads[cell];
+
+		if ( heads[cell] != NONE )
+			prevInCell[ heads[cell] ] = object;
+
+		heads[cell] = object;
+		numObjects++;
+	}
+
+	/**
+	 * Removes object from the grid
+	 * @param object Number of the object
+	 */
+	public void remove( int object )
+	{
+		if ( object < capacity )
+			unlink( object );
+	}
+
+	/**
+	 * Finds objects within the radius of the point. Found objects are available
+	 * through result() until the next query
+	 * @param x X coordinate of the point
+	 * @param y Y coordinate of the point
+	 * @param radius Radius around the point
+	 * @return Number of found objects
+	 */
+	public int query( float x, float y, float radius )
+	{
+		int count = 0;
+		float radius2 = radius * radius;
+
+		int minCol = column( x - radius ), maxCol = column( x + radius );
+		int minRow = row( y - radius ), maxRow = row( y + radius );
+
+		for ( int row = minRow; row <= maxRow; row++ )
+			for ( int col = minCol; col <= maxCol; col++ )
+				for ( int object = heads[ row * columns + col ]; object != NONE; object = nextInCell[object] )
+				{
+					float dx = gridX[object] - x;
+					float dy = gridY[object] - y;
+
+					if ( dx*dx + dy*dy > radius2 )
+						continue;
+
+					if ( count == results.length )
+						results = Arrays.copyOf( results, count * 2 );
+
+					results[count++] = object;
+				}
+
+		return count;
+	}
+
+	/**
+	 * Gets object found by the last query
+	 * @param i Position from 0 to number of found objects - 1
+	 * @return Number of the found object
+	 */
+	public int result( int i )
+	{
+		return results[i];
+	}
+
+	/**
+	 * Unlinks object from the list of its cell
+	 * @param object Number of the object
+	 */
+	private void unlink( int object )
+	{
+		if ( cell[object] == NONE )
+			return;
+
+		if ( prevInCell[object] != NONE )
+			nextInCell[ prevInCell[object] ] = nextInCell[object];
+		else
+			heads[ cell[object] ] = nextInCell[object];
+
+		if ( nextInCell[object] != NONE )
+			prevInCell[ nextInCell[object] ] = prevInCell[object];
+
+		cell[object] = NONE;
+		numObjects--;
+	}
+
+	/**
+	 * Grows arrays of objects
+	 * @param capacity New number of objects
+	 */
+	private void grow( int capacity )
+	{
+		int old = this.capacity;
+
+		this.capacity = capacity;
+
+		gridX = Arrays.copyOf( gridX, capacity );
+		gridY = Arrays.copyOf( gridY, capacity );
+		cell = Arrays.copyOf( cell, capacity );
+		prevInCell = Arrays.copyOf( prevInCell, capacity );
+		nextInCell = Arrays.copyOf( nextInCell, capacity );
+
+		Arrays.fill( cell, old, capacity, NONE );
+	}
+
+	/**
+	 * Makes array of objects or cells with no object
+	 * @param length Length of the array
+	 * @return Array filled with NONE
+	 */
+	private static int[] filled( int length )
+	{
+		int[] array = new int[length];
+
+		Arrays.fill( array, NONE );
+
+		return array;
+	}
+
+	/**
+	 * Gets cell of the point
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Cell index
+	 */
+	private int cellOf( float x, float y )
+	{
+		return row( y ) * columns + column( x );
+	}
+
+	/**
+	 * Gets column of the X coordinate clamped into the grid
+	 * @param x X coordinate
+	 * @return Column index
+	 */
+	private int column( float x )
+	{
+		return Math.min( columns - 1, Math.max(0, (int) Math.floor(x / cellSize)) );
+	}
+
+	/**
+	 * Gets row of the Y coordinate clamped into the grid
+	 * @param y Y coordinate
+	 * @return Row index
+	 */
+	private int row( float y )
+	{
+		return Math.min( rows - 1, Math.max(0, (int) Math.floor(y / cellSize)) );
+	}
+}
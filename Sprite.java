@@ -26,6 +26,15 @@ public interface Sprite
 	
 	// Displays shape
 	void draw( Graphics2D g );
+	
+	// Displays shape between its previous and current state
+	void draw( Graphics2D g, float alpha );
+	
+	// Keeps current state as the previous one before the next update
+	void savePrevious();
+	
+	// Adds screen area changed since the previous state to the dirty area
+	void addDirty( Rectangle dirty );
 
 	// Updates game screen
 	void update();
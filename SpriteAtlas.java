@@ -0,0 +1,206 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Class SpriteAtlas - images of a shape pre-drawn in every color and rotation it's drawn in,
+ * so drawing a sprite is copying an image instead of filling an antialiased path through
+ * a transform. Rotations are quantized to the steps angles are sent in by the protocol,
+ * and images are drawn the first time they are needed and kept compatible with the screen,
+ * where Java2D caches them in video memory. Sprites slower than a pixel a frame are not
+ * rounded to whole pixels, where they would step a pixel every few frames: they are drawn
+ * from images pre-drawn at quarters of a pixel, so they glide and are still only copied
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class SpriteAtlas
+{
+	// Number of rotations, the same as the number of steps of angles in the protocol
+	public static final int ROTATIONS = 256;
+	// Largest number of colors kept, more colors are drawn by filling the shape
+	private static final int MAX_COLORS = 64;
+	// Speed in pixels per frame below which sprites are drawn between pixels
+	private static final float SUB_PIXEL_SPEED = 1f;
+	// Number of steps a pixel is divided into by X and by Y for sprites drawn between pixels
+	private static final int SUB_PIXELS = 4;
+	// Number of images of every rotation, one for every step by X and by Y, the first on whole pixels
+	private static final int PHASES = SUB_PIXELS * SUB_PIXELS;
+	// Largest number of images between pixels kept, more slow sprites are drawn on whole pixels
+	private static final int MAX_PHASE_IMAGES = 4096;
+
+	private final Shape shape;	// Shape drawn into images
+	private final float w;		// Width of the shape, it rotates around the middle
+	private final float h;		// Height of the shape
+	private final int size;		// Side of square images, which hold the shape in any rotation
+	private int numPhaseImages;	// Number of drawn images between pixels
+
+	// Images by colors, every one an array of images by rotations and steps between pixels, null until drawn
+	private final PlayerTable<Image[]> images = new PlayerTable<>();
+
+	/**
+	 * Class constructor
+	 * @param shape Shape to draw
+	 * @param w Width of the shape
+	 * @param h Height of the shape
+	 */
+	public SpriteAtlas( Shape shape, float w, float h )
+	{
+		this.shape = shape;
+		this.w = w;
+		this.h = h;
+
+		// The farthest corner of the shape's bounds from the middle sets the side, with a pixel
+		// on each side for antialiasing
+		Rectangle2D b = shape.getBounds2D();
+		double radius = Math.max( Math.hypot( b.getMinX() - w/2, b.getMinY() - h/2 ),
+								  Math.hypot( b.getMaxX() - w/2, b.getMaxY() - h/2 ) );
+		radius = Math.max( radius, Math.max( Math.hypot( b.getMinX() - w/2, b.getMaxY() - h/2 ),
+											 Math.hypot( b.getMaxX() - w/2, b.getMinY() - h/2 ) ) );
+
+		this.size = 2 * (int) Math.ceil( radius ) + 2;
+	}
+
+	/**
+	 * Draws the shape as SpriteImpl places it: translated by its coordinates and rotated
+	 * around its middle
+	 * @param g Graphics context
+	 * @param c Color
+	 * @param r Rotation
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param s Speed in pixels per frame
+	 */
+	public void draw( Graphics2D g, int c, float r, float x, float y, float s )
+	{
+		Image[] rotations = images.get( c );
+
+		if ( rotations == null )
+		{
+			// Colors past the limit are not cached, so arenas of many colors neither grow
+			// the atlas without bound nor draw every image again and again
+			if ( images.size() == MAX_COLORS )
+			{
+				fill( g, c, r, x, y );
+				return;
+			}
+
+			rotations = new Image[ROTATIONS * PHASES];
+			images.put( c, rotations );
+		}
+
+		float left = x + w/2 - size/2;
+		float top = y + h/2 - size/2;
+		int pixelLeft = Math.round( left );
+		int pixelTop = Math.round( top );
+		int phase = 0;
+
+		// Slow sprite goes to the nearest step between pixels, standing and fast ones to the nearest pixel
+		if ( s != 0 && Math.abs( s ) < SUB_PIXEL_SPEED )
+		{
+			int stepsLeft = Math.round( left * SUB_PIXELS );
+			int stepsTop = Math.round( top * SUB_PIXELS );
+
+			pixelLeft = Math.floorDiv( stepsLeft, SUB_PIXELS );
+			pixelTop = Math.floorDiv( stepsTop, SUB_PIXELS );
+			phase = Math.floorMod( stepsLeft, SUB_PIXELS ) * SUB_PIXELS + Math.floorMod( stepsTop, SUB_PIXELS );
+		}
+
+		// Sprites outside the area being drawn are skipped
+		if ( !g.hitClip( pixelLeft, pixelTop, size + 1, size + 1 ) )
+			return;
+
+		// Rotation is quantized as the protocol does, wrapped into one turn
+		int i = Protocol.angle( r ) & 0xFF;
+		int k = i * PHASES + phase;
+
+		if ( rotations[k] == null )
+		{
+			// Past the limit of images between pixels the sprite stays on the nearest pixel
+			if ( phase != 0 && numPhaseImages == MAX_PHASE_IMAGES )
+			{
+				k = i * PHASES;
+				pixelLeft = Math.round( left );
+				pixelTop = Math.round( top );
+			}
+			else if ( phase != 0 )
+				numPhaseImages++;
+
+			if ( rotations[k] == null )
+				rotations[k] = render( g.getDeviceConfiguration(), c, Protocol.angle( (byte) i ),
+									   (float) (phase / SUB_PIXELS) / SUB_PIXELS, (float) (phase % SUB_PIXELS) / SUB_PIXELS );
+		}
+
+		g.drawImage( rotations[k], pixelLeft, pixelTop, null );
+	}
+
+	/**
+	 * Adds area the shape is drawn in to a rectangle
+	 * @param area Rectangle to add to, empty if nothing was added to it yet
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 */
+	public void addBounds( Rectangle area, float x, float y )
+	{
+		int left = (int) Math.floor( x + w/2 - size/2 );
+		int top = (int) Math.floor( y + h/2 - size/2 );
+
+		// Image between pixels is a pixel wider and higher
+		if ( area.isEmpty() )
+			area.setBounds( left, top, size + 1, size + 1 );
+		else
+		{
+			area.add( left, top );
+			area.add( left + size + 1, top + size + 1 );
+		}
+	}
+
+	/**
+	 * Draws the shape by filling it through a transform
+	 * @param g Graphics context
+	 * @param c Color
+	 * @param r Rotation
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 */
+	private void fill( Graphics2D g, int c, float r, float x, float y )
+	{
+		AffineTransform saveAT = g.getTransform();
+
+		g.setColor( new Color(c) );
+		g.translate( x, y );
+		g.rotate( -r, w/2, h/2 );
+		g.fill( shape );
+		g.setTransform( saveAT );
+	}
+
+	/**
+	 * Draws the shape into a new image
+	 * @param config Configuration of the device the image is drawn to
+	 * @param c Color
+	 * @param r Rotation
+	 * @param dx Shift by X within a pixel
+	 * @param dy Shift by Y within a pixel
+	 * @return Image with the shape rotated around the image's middle and shifted, a pixel
+	 * wider and higher if it's shifted
+	 */
+	private Image render( GraphicsConfiguration config, int c, float r, float dx, float dy )
+	{
+		int side = dx == 0 && dy == 0 ? size : size + 1;
+		BufferedImage image = config.createCompatibleImage( side, side, Transparency.TRANSLUCENT );
+		Graphics2D g = image.createGraphics();
+
+		g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+		g.setColor( new Color(c) );
+		g.translate( size/2 - w/2 + dx, size/2 - h/2 + dy );
+		g.rotate( -r, w/2, h/2 );
+		g.fill( shape );
+		g.dispose();
+
+		return image;
+	}
+}
@@ -5,26 +5,6 @@
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.geom.*;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.UnknownHostException;
-import java.util.HashMap;
-import java.util.Scanner;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -46,7 +26,7 @@ public class SpriteImpl implements Sprite, SocketExchange
 	private   int   c; // Player color
 	private	  long  player; // Player ID
 
-	private final Shape shape; // Shape object that moves
+	private final SpriteAtlas atlas; // Images of the shape object that moves
 	private final float h; // Height of shape object
 	private final float w; // Width of shape object
 
@@ -57,21 +37,17 @@ public class SpriteImpl implements Sprite, SocketExchange
 	private float dx; // velocity in x
 	private float dy; // velocity in y
 	
-	private SpriteState ss;					// Sprite state
-	private long lastTimestamp = 0;			// Last timestamp
+	// State before the last update, drawn from when rendering falls between updates
+	private float px; // x
+	private float py; // y
+	private float pr; // rotation
 	
-	private static HashMap<Long, SpriteState> spriteState = new HashMap<>();
-	
-	// Executor service to exchange messages with Tanks Server
-	private ExecutorService execServ = Executors.newSingleThreadExecutor();
-	
-	// Maximum wait limit in milliseconds for the result of executor service
-	private final static int MAX_WAIT_LIMIT = 30;
+	protected Prediction prediction;		// Inputs of local tank not acknowledged yet, null for other tanks
 	
 	/**
 	 * Class constructor
 	 * @param bounds Movement bounds
-	 * @param aShape Object that moves
+	 * @param atlas Images of the object that moves
 	 * @param x X coordinate
 	 * @param y Y coordinate
 	 * @param h Height of moving object
@@ -80,18 +56,19 @@ public class SpriteImpl implements Sprite, SocketExchange
 	 * @param rotateRate Rotation rate
 	 * @param maxSpeed Maximum speed
 	 */
-	public SpriteImpl( Rectangle2D bounds, Shape aShape,
+	public SpriteImpl( Rectangle2D bounds, SpriteAtlas atlas,
 					   int x, int y, int h, int w,
 					   float acceleration, float rotateRate, float maxSpeed, long player ) 
 	{
 		this.bounds = bounds;
-		this.shape = aShape;
+		this.atlas = atlas;
 		
-		this.x = x;
-		this.y = y;
+		this.x = this.px = x;
+		this.y = this.py = y;
 		this.h = h;
 		this.w = w;
-		this.c = TanksFrame.color.getRGB();
+		// Color is not set when there is no frame, as with bots of load generator
+		this.c = (TanksFrame.color != null ? TanksFrame.color : TanksFrame.DEFAULT_LOCAL_COLOR).getRGB();
 
 		this.acceleration = assertNonNeg(acceleration);
 		this.rotateRate = assertNonNeg(rotateRate);
@@ -117,19 +94,42 @@ public class SpriteImpl implements Sprite, SocketExchange
 	 */
 	public void draw( Graphics2D g ) 
 	{
-		// Save Transform
-		AffineTransform saveAT = g.getTransform();
+		draw( g, 1 );
+	}
+	
+	/**
+	 * Draws graphics between the previous and the current state
+	 * @param g Graphics context
+	 * @param alpha Fraction of the time from the previous update to the next one, 1 for the current state
+	 */
+	public void draw( Graphics2D g, float alpha ) 
+	{
+		// Copy the image of the shape in its color and rotation to specified coordinates,
+		// turned the shorter way round when rotation crosses a full turn
+		atlas.draw( g, c, InterpolationBuffer.lerpAngle( pr, r, alpha ), px + (x - px) * alpha, py + (y - py) * alpha, s );
+	}
+
+	/**
+	 * Keeps current state as the previous one before the next update
+	 */
+	public void savePrevious()
+	{
+		px = x;
+		py = y;
+		pr = r;
+	}
+	
+	/**
+	 * Adds screen area changed since the previous state: where the shape was and where it is
+	 * @param dirty Rectangle to add to, empty if nothing was added to it yet
+	 */
+	public void addDirty( Rectangle dirty )
+	{
+		if ( x == px && y == py && r == pr )
+			return;
 		
-		// Set object color
-		g.setColor( new Color(c) );
-		// Move to specified coordinates
-		g.translate( x,y );
-		// Rotate object
-		g.rotate( -r, w/2, h/2 );
-		// Fill the shape with color
-		g.fill( shape );
-		// Overwrite the Transform in 2D context 
-		g.setTransform( saveAT );
+		atlas.addBounds( dirty, px, py );
+		atlas.addBounds( dirty, x, y );
 	}
 
 	/**
@@ -158,15 +158,26 @@ public class SpriteImpl implements Sprite, SocketExchange
 	 */
 	public void update() 
 	{
-		// Save Sprite State
-		ss = new SpriteState();
-		
 		this.x += this.dx;
 		this.y += this.dy;
 
 		enforceBounds();
 	}
 	
+	/**
+	 * Pushes the shape out of another one it ran into, stopping it as the bounds do
+	 * @param dx Push by X coordinate
+	 * @param dy Push by Y coordinate
+	 */
+	public void push( float dx, float dy )
+	{
+		this.x += dx;
+		this.y += dy;
+		this.s = 0;
+
+		enforceBounds();
+	}
+	
 	/**
 	 * Enforces bounds for the shape movements
 	 */
@@ -277,149 +288,16 @@ public class SpriteImpl implements Sprite, SocketExchange
 	}
 	
 	/**
-	 * Sends update to Tanks Server
+	 * Sends update to Tanks Server. The state is handed to the network thread,
+	 * which sends the latest one every exchange interval, so it does not wait
 	 */
 	public void sendUpdate( ActionEvent e )
 	{
-		// If sprite state did not change
-		if ( ss.xS == x && ss.yS == y && ss.rS == r && ss.dS == d && ss.sS == s )
-			return;
-		
-		// Get current system's time
-		long timestamp = System.currentTimeMillis();
-		
-		// Prepare a message to send to Tanks Server
-		String msgToSend = "" + timestamp + " " + x + " " + y + " " + r + " " + d + " " + s + "\n";
-		String msgReceived;
-		
-		try 
-		{
-			// Initiate exchange with Tanks Server
-			Future res = execServ.submit( new ClientExchange(msgToSend) );
-			
-			// Try to get the result of message exchange with Tanks Server
-			msgReceived = (String) res.get( MAX_WAIT_LIMIT, TimeUnit.MILLISECONDS );
-		} 
-		catch ( Exception ex ) 
-		{	 
-			msgReceived = "";
-		}	 
-		
-		if ( !msgReceived.isEmpty() )
-		{
-			// Transform received message into Scanner object
-			Scanner in = new Scanner( msgReceived );
-			String[] input;
-			long playerID;
-			
-			while ( in.hasNextLine() )
-			{
-				input = in.nextLine().split( " " );
-				playerID = 0;
-				timestamp = 0;
-				
-				// If it was transformed successfully
-				if ( input != null && input.length > 0 )
-					try
-					{
-						playerID = Long.parseLong( input[0] );
-						// Get timestamp from received message
-						timestamp = Long.parseLong( input[1] );
-						
-						// Get remote tank data
-						float x = Float.parseFloat( input[2] );
-						float y = Float.parseFloat( input[3] );
-						float r = Float.parseFloat( input[4] );
-						float d = Float.parseFloat( input[5] );
-						float s = Float.parseFloat( input[6] );
-						int c = Integer.parseInt( input[7] );
-						
-						if ( timestamp == 0l )
-							TankDriverRemote.removeTimer( playerID );
-						else
-							spriteState.put(  playerID, new SpriteState(timestamp, x, y, r, d, s, c) );
-					}
-					catch ( Exception ex )
-					{ }
-			}
-		}
-	}
-	
-	public static void removePlayer( long playerID )
-	{
-		spriteState.remove(  playerID );
-	}
-	
-	/**
-	 * Captures state of remote Tank
-	 */
-	public void captureState( ActionEvent e )
-	{
-		SpriteState ss = spriteState.get(player);
-		
-		if ( ss != null && ss.timestamp > lastTimestamp )
-		{
-			x = ss.xS;
-			y = ss.yS;
-			r = ss.rS;
-			d = ss.rS;
-			s = ss.sS;
-			c = ss.cS;
-			
-			lastTimestamp = ss.timestamp; 
-		}
-		else
-		{
-			x = TanksFrame.WIDTH;
-			y = TanksFrame.HEIGHT;
-			r = 0;
-			d = 0;
-			s = 0;
-			c = TanksFrame.DEFAULT_REMOTE_COLOR.getRGB();
-		}
+		ClientNetwork.offer( System.currentTimeMillis(), x, y, r, d, s, prediction );
 	}
 	
 	public long getPlayerID()
 	{
 		return player;
 	}
-	
-	/**
-	 * Class SpriteState - to store Sprite's state
-	 * @author Peter Cross
-	 * @version April 5, 2017
-	 */
-	private class SpriteState
-	{
-		private long 	timestamp; // Timestamp
-		
-		private float 	xS,	// X
-						yS,	// Y
-						rS, // Rotation
-						dS,	// Direction
-						sS;	// Speed
-		private int 	cS; // Color
-		
-		SpriteState()
-		{
-			timestamp = System.currentTimeMillis();
-			xS = x;
-			yS = y;
-			rS = r;
-			dS = d;
-			sS = s;
-			cS = c;
-		}
-		
-		SpriteState( long timeStamp, float x, float y, float r, float d, float s, int c )
-		{
-			timestamp = timeStamp;
-			xS = x;
-			yS = y;
-			rS = r;
-			dS = d;
-			sS = s;
-			cS = c;
-		}
-	}
 }
\ No newline at end of file
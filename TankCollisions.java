@@ -0,0 +1,353 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.util.Arrays;
+
+/**
+ * Class TankCollisions - finds pairs of overlapping tanks. Tanks are hashed into a uniform
+ * grid of cells as wide as a tank in any rotation, so only tanks in neighbouring cells are
+ * candidates and the cost grows with the number of tanks rather than with the number of
+ * their pairs. Candidates are tested exactly, by separating axes of their triangles, and
+ * every overlapping pair comes with the shortest push separating its tanks
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class TankCollisions
+{
+	// Middle of tank's shape, which it rotates around
+	private static final float MIDDLE_X = TankImpl.WIDTH / 2f;
+	private static final float MIDDLE_Y = TankImpl.HEIGHT / 2f;
+	// Radius of the circle around the middle holding the shape in any rotation
+	private static final float RADIUS = radius();
+	// Side of a cell, so tanks that overlap are in the same or neighbouring cells
+	private static final float CELL_SIZE = 2 * RADIUS;
+	// Overlap in pixels taken for touching, so tanks just pushed apart are not found
+	// overlapping again by rounding of the push
+	private static final float TOLERANCE = 0.01f;
+
+	private int numTanks;		// Number of added tanks
+	private int capacity = 64;	// Number of tanks the arrays hold
+
+	private float[] middleX = new float[capacity];		// X coordinate of tank's middle
+	private float[] middleY = new float[capacity];		// Y coordinate of tank's middle
+	private float[] cornerX = new float[3 * capacity];	// X coordinates of tank's corners
+	private float[] cornerY = new float[3 * capacity];	// Y coordinates of tank's corners
+	private boolean[] moving = new boolean[capacity];	// If the tank is moved by the caller
+
+	// Tanks ordered by buckets of their cells, and the first one of every bucket
+	private int[] bucket = new int[capacity];
+	private int[] sorted = new int[capacity];
+	private int[] start = new int[2 * capacity + 1];
+	private final int[] neighbours = new int[9];
+
+	private int numPairs;							// Number of pairs found by the last detection
+	private int[] first = new int[capacity];		// First tank of the pair
+	private int[] second = new int[capacity];		// Second tank of the pair
+	private float[] pushX = new float[capacity];	// Push of the first tank out of the second by X
+	private float[] pushY = new float[capacity];	// Push of the first tank out of the second by Y
+
+	/**
+	 * Removes all tanks before adding them for the next detection
+	 */
+	public void clear()
+	{
+		numTanks = 0;
+		numPairs = 0;
+	}
+
+	/**
+	 * Adds tank placed as sprites are drawn: translated by its coordinates and rotated around its middle
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param moving If the caller moves the tank, pairs of tanks none of which it moves are not tested
+	 * @return Number of the tank in pairs
+	 */
+	public int add( float x, float y, float r, boolean moving )
+	{
+		if ( numTanks == capacity )
+			grow( 2 * capacity );
+
+		int i = numTanks++;
+		float cos = (float) Math.cos( -r );
+		float sin = (float) Math.sin( -r );
+
+		middleX[i] = x + MIDDLE_X;
+		middleY[i] = y + MIDDLE_Y;
+		this.moving[i] = moving;
+
+		for ( int k = 0; k < 3; k++ )
+		{
+			float cx = TankImpl.CORNERS_X[k] - MIDDLE_X;
+			float cy = TankImpl.CORNERS_Y[k] - MIDDLE_Y;
+
+			cornerX[3*i + k] = middleX[i] + cx * cos - cy * sin;
+			cornerY[3*i + k] = middleY[i] + cx * sin + cy * cos;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Finds overlapping pairs of added tanks, testing only tanks in neighbouring cells of the grid
+	 * @return Number of found pairs
+	 */
+	public int detect()
+	{
+		numPairs = 0;
+
+		// Number of buckets is a power of two, at least twice the number of tanks
+		int numBuckets = Integer.highestOneBit( Math.max( 2 * numTanks - 1, 1 ) ) << 1;
+
+		if ( numBuckets + 1 > start.length )
+			start = new int[ numBuckets + 1 ];
+
+		Arrays.fill( start, 0, numBuckets + 1, 0 );
+
+		// Count tanks in every bucket, then sort them by buckets
+		for ( int i = 0; i < numTanks; i++ )
+		{
+			bucket[i] = bucket( column( middleX[i] ), row( middleY[i] ), numBuckets );
+			start[ bucket[i] + 1 ]++;
+		}
+
+		for ( int b = 0; b < numBuckets; b++ )
+			start[b + 1] += start[b];
+
+		for ( int i = 0; i < numTanks; i++ )
+			sorted[ start[ bucket[i] ]++ ] = i;
+
+		// Filling moved every start to the start of the next bucket, shift them back
+		for ( int b = numBuckets; b > 0; b-- )
+			start[b] = start[b - 1];
+
+		start[0] = 0;
+
+		for ( int i = 0; i < numTanks; i++ )
+		{
+			int col = column( middleX[i] ), row = row( middleY[i] );
+			int numNeighbours = 0;
+
+			// Buckets of the cell and its neighbours, each once though cells may share them
+			for ( int dr = -1; dr <= 1; dr++ )
+				for ( int dc = -1; dc <= 1; dc++ )
+				{
+					int b = bucket( col + dc, row + dr, numBuckets );
+					int k = 0;
+
+					while ( k < numNeighbours && neighbours[k] != b )
+						k++;
+
+					if ( k == numNeighbours )
+						neighbours[numNeighbours++] = b;
+				}
+
+			// Every pair is tested by the tank with the lower number
+			for ( int k = 0; k < numNeighbours; k++ )
+				for ( int n = start[ neighbours[k] ]; n < start[ neighbours[k] + 1 ]; n++ )
+					if ( sorted[n] > i )
+						test( i, sorted[n] );
+		}
+
+		return numPairs;
+	}
+
+	/**
+	 * Finds overlapping pairs of added tanks by testing every pair, to compare detection through the grid with
+	 * @return Number of found pairs
+	 */
+	public int detectAllPairs()
+	{
+		numPairs = 0;
+
+		for ( int i = 0; i < numTanks; i++ )
+			for ( int j = i + 1; j < numTanks; j++ )
+				test( i, j );
+
+		return numPairs;
+	}
+
+	/**
+	 * Gets first tank of the pair
+	 * @param k Pair from 0 to number of found pairs - 1
+	 * @return Number of the tank
+	 */
+	public int first( int k )
+	{
+		return first[k];
+	}
+
+	/**
+	 * Gets second tank of the pair
+	 * @param k Pair from 0 to number of found pairs - 1
+	 * @return Number of the tank
+	 */
+	public int second( int k )
+	{
+		return second[k];
+	}
+
+	/**
+	 * Gets push of the first tank by X coordinate, the shortest that separates it from the second one.
+	 * The second tank is separated by the opposite push
+	 * @param k Pair from 0 to number of found pairs - 1
+	 * @return Push by X coordinate
+	 */
+	public float pushX( int k )
+	{
+		return pushX[k];
+	}
+
+	/**
+	 * Gets push of the first tank by Y coordinate, the shortest that separates it from the second one
+	 * @param k Pair from 0 to number of found pairs - 1
+	 * @return Push by Y coordinate
+	 */
+	public float pushY( int k )
+	{
+		return pushY[k];
+	}
+
+	/**
+	 * Tests if two tanks overlap and adds them to found pairs if they do
+	 * @param i First tank
+	 * @param j Second tank
+	 */
+	private void test( int i, int j )
+	{
+		if ( !moving[i] && !moving[j] )
+			return;
+
+		// Tanks farther apart than their circles can't overlap
+		float dx = middleX[i] - middleX[j];
+		float dy = middleY[i] - middleY[j];
+
+		if ( dx*dx + dy*dy >= CELL_SIZE * CELL_SIZE )
+			return;
+
+		// Triangles overlap if no normal of their edges separates their projections,
+		// and the normal with the least overlap is the shortest way to separate them
+		float depth = Float.MAX_VALUE, axisX = 0, axisY = 0;
+
+		for ( int e = 0; e < 6; e++ )
+		{
+			int t = e < 3 ? i : j;
+			int a = 3*t + e % 3, b = 3*t + (e + 1) % 3;
+			float nx = cornerY[a] - cornerY[b];
+			float ny = cornerX[b] - cornerX[a];
+			float length = (float) Math.sqrt( nx*nx + ny*ny );
+
+			nx /= length;
+			ny /= length;
+
+			float minI = Float.MAX_VALUE, maxI = -Float.MAX_VALUE;
+			float minJ = Float.MAX_VALUE, maxJ = -Float.MAX_VALUE;
+
+			for ( int k = 0; k < 3; k++ )
+			{
+				float pi = cornerX[3*i + k] * nx + cornerY[3*i + k] * ny;
+				float pj = cornerX[3*j + k] * nx + cornerY[3*j + k] * ny;
+
+				minI = Math.min( minI, pi );
+				maxI = Math.max( maxI, pi );
+				minJ = Math.min( minJ, pj );
+				maxJ = Math.max( maxJ, pj );
+			}
+
+			// Push of the first tank forward or back along the normal that clears the second one
+			float forward = maxJ - minI;
+			float back = maxI - minJ;
+
+			// Separating axis found, touching tanks do not overlap
+			if ( forward <= TOLERANCE || back <= TOLERANCE )
+				return;
+
+			if ( Math.min( forward, back ) < depth )
+			{
+				depth = Math.min( forward, back );
+				axisX = forward < back ? nx : -nx;
+				axisY = forward < back ? ny : -ny;
+			}
+		}
+
+		if ( numPairs == first.length )
+		{
+			first = Arrays.copyOf( first, 2 * numPairs );
+			second = Arrays.copyOf( second, 2 * numPairs );
+			pushX = Arrays.copyOf( pushX, 2 * numPairs );
+			pushY = Arrays.copyOf( pushY, 2 * numPairs );
+		}
+
+		first[numPairs] = i;
+		second[numPairs] = j;
+		pushX[numPairs] = axisX * depth;
+		pushY[numPairs] = axisY * depth;
+		numPairs++;
+	}
+
+	/**
+	 * Gets column of the cell
+	 * @param x X coordinate
+	 * @return Column, negative to the left of the arena
+	 */
+	private static int column( float x )
+	{
+		return (int) Math.floor( x / CELL_SIZE );
+	}
+
+	/**
+	 * Gets row of the cell
+	 * @param y Y coordinate
+	 * @return Row, negative above the arena
+	 */
+	private static int row( float y )
+	{
+		return (int) Math.floor( y / CELL_SIZE );
+	}
+
+	/**
+	 * Gets bucket of the cell. Cells are not limited to the arena, so they are hashed
+	 * into buckets instead of indexing them, and cells sharing a bucket only add candidates
+	 * @param col Column of the cell
+	 * @param row Row of the cell
+	 * @param numBuckets Number of buckets, a power of two
+	 * @return Bucket
+	 */
+	private static int bucket( int col, int row, int numBuckets )
+	{
+		return (col * 73856093 ^ row * 19349663) & (numBuckets - 1);
+	}
+
+	/**
+	 * Gets radius of the circle around tank's middle holding its shape in any rotation
+	 * @return Distance from the middle to the farthest corner
+	 */
+	private static float radius()
+	{
+		float radius = 0;
+
+		for ( int k = 0; k < 3; k++ )
+			radius = Math.max( radius, (float) Math.hypot( TankImpl.CORNERS_X[k] - MIDDLE_X,
+														   TankImpl.CORNERS_Y[k] - MIDDLE_Y ) );
+
+		return radius;
+	}
+
+	/**
+	 * Grows arrays of tanks
+	 * @param capacity New number of tanks
+	 */
+	private void grow( int capacity )
+	{
+		this.capacity = capacity;
+
+		middleX = Arrays.copyOf( middleX, capacity );
+		middleY = Arrays.copyOf( middleY, capacity );
+		cornerX = Arrays.copyOf( cornerX, 3 * capacity );
+		cornerY = Arrays.copyOf( cornerY, 3 * capacity );
+		moving = Arrays.copyOf( moving, capacity );
+		bucket = Arrays.copyOf( bucket, capacity );
+		sorted = Arrays.copyOf( sorted, capacity );
+	}
+}
@@ -18,10 +18,22 @@ public class TankImpl extends SpriteImpl implements Tank
 	private final static float ROTATE_RATE = (float) Math.PI/2/TanksComponent.FPS_MAX;
 	// Tank maximum speed
 	private final static float MAX_SPEED = 2f;
+	// Width and height of tank's shape
+	final static int WIDTH = 20;
+	final static int HEIGHT = 20;
+	// Corners of tank's shape, a triangle pointing down before rotation
+	final static float[] CORNERS_X = { 0f, 10f, 20f };
+	final static float[] CORNERS_Y = { 0f, 20f, 0f };
+	// Images of tank's shape, shared by all tanks
+	final static SpriteAtlas ATLAS = new SpriteAtlas( makeTankShape(), WIDTH, HEIGHT );
 
-	// Steering directions
-	private Direction dir = Direction.NONE;
-	private SpeedRel sRel = SpeedRel.NONE;
+	// Steering packed as input, set by the keys on the event dispatch thread and read once
+	// a frame by the thread that moves the tank, which is another one with the game loop
+	private volatile int steering;
+	
+	// All values of steering directions, to unpack inputs without allocating
+	private final static Direction[] DIRECTIONS = Direction.values();
+	private final static SpeedRel[] SPEEDS = SpeedRel.values();
 	
 	/**
 	 * Class constructor
@@ -31,22 +43,22 @@ public class TankImpl extends SpriteImpl implements Tank
 	 */
 	public TankImpl( Rectangle2D bounds, int x, int y, long player ) 
 	{
-		super( bounds, makeTankShape(), x,y, 20,20, ACCELERATION, ROTATE_RATE, MAX_SPEED, player );
+		super( bounds, ATLAS, x,y, HEIGHT,WIDTH, ACCELERATION, ROTATE_RATE, MAX_SPEED, player );
 	}
 	
 	/**
 	 * Creates Tank's shape object
 	 * @return Created Shape object
 	 */
-	private static Shape makeTankShape() 
+	static Shape makeTankShape() 
 	{
 		Path2D shape = new Path2D.Float();
 		
 		// Drawing of shape
-		shape.moveTo(0f, 0f);
-		shape.lineTo(10f, 20f);
-		shape.lineTo(20f, 0f);
-		shape.lineTo(0f, 0f);
+		shape.moveTo(CORNERS_X[0], CORNERS_Y[0]);
+		shape.lineTo(CORNERS_X[1], CORNERS_Y[1]);
+		shape.lineTo(CORNERS_X[2], CORNERS_Y[2]);
+		shape.lineTo(CORNERS_X[0], CORNERS_Y[0]);
 		shape.closePath();
 		
 		return shape;
@@ -57,8 +69,33 @@ public class TankImpl extends SpriteImpl implements Tank
 	 */
 	public void steer( Direction dir, SpeedRel sRel ) 
 	{
-		this.dir = dir;
-		this.sRel = sRel;
+		steering = dir.ordinal() << 2 | sRel.ordinal();
+	}
+
+	/**
+	 * Steers the tank according to input
+	 * @param input Direction's ordinal shifted left by 2 bits, or'ed with speed change's ordinal
+	 */
+	public void steer( int input )
+	{
+		steering = input;
+	}
+	
+	/**
+	 * Gets current steering as input
+	 * @return Direction's ordinal shifted left by 2 bits, or'ed with speed change's ordinal
+	 */
+	public int input()
+	{
+		return steering;
+	}
+	
+	/**
+	 * Makes tank's state predicted, recording its inputs until the server acknowledges them
+	 */
+	public void predict()
+	{
+		prediction = new Prediction();
 	}
 
 	/**
@@ -66,9 +103,87 @@ public class TankImpl extends SpriteImpl implements Tank
 	 */
 	public void update() 
 	{
+		// Steering is read once, so the frame is moved and recorded by the same input
+		int input = steering;
+		
+		step( input );
+		
+		// Remember input of the frame and its result until the server applies it
+		if ( prediction != null )
+			prediction.record( input, x, y, r, d, s );
+	}
+	
+	/**
+	 * Places the tank at specified state
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param r Rotation
+	 * @param d Direction
+	 * @param s Speed
+	 */
+	void place( float x, float y, float r, float d, float s )
+	{
+		this.x = x;
+		this.y = y;
+		this.r = r;
+		this.d = d;
+		this.s = s;
+	}
+	
+	/**
+	 * Moves the tank by one frame of input, as the server with authoritative movement does
+	 * @param input Steering of the tank during the frame
+	 */
+	void move( int input )
+	{
+		step( input );
+	}
+	
+	/**
+	 * Moves the tank by one frame of input, leaving the steering by the keys as it is
+	 * @param input Steering of the tank during the frame
+	 */
+	private void step( int input )
+	{
+		Direction dir = DIRECTIONS[ (input >> 2) & 3 ];
+		SpeedRel sRel = SPEEDS[ input & 3 ];
+		
 		rotate(dir);
 		changeVelocity(dir, sRel);
 
 		super.update();
 	}
+	
+	/**
+	 * Reconciles predicted state of local tank with the state the server with authoritative
+	 * movement computed from its inputs. If the server's state differs from the one predicted
+	 * after the same input - the tank takes it and replays inputs the server has not applied yet
+	 * @param view The latest view of the world
+	 */
+	public void reconcile( WorldView view )
+	{
+		if ( prediction == null || !view.authoritative )
+			return;
+		
+		int i = view.ownSlot;
+		
+		// Until the server has told the slot and sent the player's state in it
+		if ( i >= view.size || view.id[i] != getPlayerID() || view.input[i] <= prediction.acked() )
+			return;
+		
+		int seq = view.input[i];
+		
+		if ( !prediction.matches( seq, view.x[i], view.y[i], view.r[i], view.d[i], view.s[i] ) )
+		{
+			place( view.x[i], view.y[i], view.r[i], view.d[i], view.s[i] );
+			
+			for ( int next = Math.max( seq + 1, prediction.oldest() ); next <= prediction.newest(); next++ )
+			{
+				move( prediction.input( next ) );
+				prediction.set( next, x, y, r, d, s );
+			}
+		}
+		
+		prediction.acknowledge( seq );
+	}
 }
\ No newline at end of file
@@ -4,11 +4,10 @@
 
 import java.awt.*;
 import java.awt.geom.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.security.SecureRandom;
 import java.awt.event.ActionEvent;
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 /**
@@ -28,22 +27,34 @@ public class TanksComponent extends JComponent
 	private final static int TANK_START_X = TanksFrame.WIDTH / 8;
 	private final static int TANK_START_Y = TanksFrame.HEIGHT / 2;
   
-	// Unique player ID
-	public final static long playerID = System.currentTimeMillis();
+	// Unique player ID, random so players starting at the same time do not collide,
+	// and positive since negative IDs are used by load generator's bots
+	public final static long playerID = new SecureRandom().nextLong() & Long.MAX_VALUE | 1;
 
 	// Time interval for exchange with Tanks Server
 	public final static int EXCH_INTERVAL = 100;
 	
+	// Default delay in milliseconds remote tanks are drawn behind real time. It covers
+	// an exchange interval between states and half another one for states coming late,
+	// since states are captured by the next frame after they come
+	public final static int DEFAULT_INTERP_DELAY = EXCH_INTERVAL * 3 / 2;
+	// Delay in milliseconds remote tanks are drawn behind real time
+	public static int interpDelay = DEFAULT_INTERP_DELAY;
+	
+	// Largest number of frames per second the game loop renders, -1 to run on Swing timer instead
+	public static int loopFps = -1;
+	
 	// Timer for local tank
 	private final Timer timer;
 	// Local tank instance
-	private final Tank tank;
+	private final TankImpl tank;
 
-	// Timer for exchange with Tanks Server
-	private final Timer exchTimer;
-	
-	// Remote tanks instances
-	private static Map<Long, Tank> remoteTanks;
+	// Remote tanks by players' slots
+	private final RemoteTanks remoteTanks = new RemoteTanks();
+	// Overlaps of local tank with remote ones, found every frame
+	private final TankCollisions collisions = new TankCollisions();
+	// Screen area changed during the tick, repainted at the end of it
+	private final Rectangle dirty = new Rectangle();
 	
 	/**
 	 * Class constructor
@@ -55,31 +66,16 @@ public class TanksComponent extends JComponent
 	  
 		// Create instance of local tank
 		tank = new TankImpl( null, TANK_START_X, TANK_START_Y, playerID );
+		// Local tank moves at once and is corrected by a server with authoritative movement
+		tank.predict();
 	  
 		// Create Tank Driver for local tank
 		new TankDriverLocal( tank, this );
 		
-		// Create timer for exchange with Tanks Server
-		exchTimer = new Timer( EXCH_INTERVAL, tank::sendUpdate );
-		
-		remoteTanks = new HashMap<>();
+		// Arena has the same size as the one tanks move in on the server
+		setPreferredSize( new Dimension( TanksFrame.WIDTH, TanksFrame.HEIGHT ) );
 	}
 	
-	public static boolean isTankInList( long playerID )
-	{
-		return remoteTanks.containsKey( playerID );
-	}
-	
-	public void addRemoteTank( long playerID )
-	{
-		// Create instance of remote tank
-		Tank remoteTank = new TankImpl( null, TanksFrame.WIDTH, TanksFrame.HEIGHT, playerID );
-		// Create Tank Driver for updating remote tank
-		new TankDriverRemote( remoteTank, this );
-		
-		remoteTanks.put( playerID, remoteTank );
-	}
-  
 	/**
 	 * Paints graphics of the component
 	 */
@@ -89,19 +85,18 @@ public class TanksComponent extends JComponent
     
 		g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
     
-		paint(g2);
+		render( g2, 1 );
 	}
   
 	/**
 	 * Draws on the Component local and remote tank
+	 * @param g Graphics context
+	 * @param alpha Fraction of the time from the previous step to the next one, 1 for the current state
 	 */
-	private void paint( Graphics2D g ) 
+	void render( Graphics2D g, float alpha ) 
 	{
-		tank.draw(g);
-		
-		for ( Long player : remoteTanks.keySet() )
-			remoteTanks.get(player).draw(g);
-		
+		tank.draw( g, alpha );
+		remoteTanks.draw( g, alpha );
 	}
 
 	/**
@@ -110,18 +105,66 @@ public class TanksComponent extends JComponent
 	 */
 	private void tick( ActionEvent e ) 
 	{
-		// Update local tank state
-		tank.update();
+		step();
 		
-		// Update remote tanks state
-		for ( Long player : remoteTanks.keySet() )
-			remoteTanks.get(player).update();
+		// Repaint only the area sprites changed, and nothing if none of them did
+		dirty.setBounds( 0, 0, 0, 0 );
+		tank.addDirty( dirty );
+		remoteTanks.addDirty( dirty );
 		
-		// Repaint the graphics
-		repaint();
+		if ( !dirty.isEmpty() )
+			repaint( dirty );
 		// Request the focus on Component
 		requestFocus();
 	}
+	
+	/**
+	 * Advances the game by one frame, called by local tank timer or by the game loop
+	 */
+	void step()
+	{
+		// Get the latest view without waiting for the network thread, once for the whole
+		// frame since the network thread may reuse a view the game no longer holds
+		WorldView view = ClientNetwork.world();
+		
+		// Correct local tank by the latest state from the server, then update its state
+		tank.savePrevious();
+		tank.reconcile( view );
+		tank.update();
+		
+		// Apply players who appeared, left or moved since the previous view to remote tanks
+		remoteTanks.apply( view, playerID );
+		
+		// Update remote tanks state, a little behind real time by server's clock
+		remoteTanks.update( Protocol.time() - view.clockOffset - interpDelay );
+		
+		// Push local tank out of remote tanks it ran into, unless the server moves it
+		if ( !view.authoritative )
+			collide();
+		
+		// Hand local tank's state to the network thread
+		tank.sendUpdate( null );
+	}
+	
+	/**
+	 * Pushes local tank out of remote tanks it overlaps, where they are drawn. Every player
+	 * pushes only its own tank, since remote tanks move by their players' states
+	 */
+	private void collide()
+	{
+		collisions.clear();
+		int local = collisions.add( tank.x, tank.y, tank.r, true );
+		remoteTanks.addTo( collisions );
+		
+		int numPairs = collisions.detect();
+		
+		for ( int k = 0; k < numPairs; k++ )
+		{
+			// Local tank is added first, so it's the first tank of its pairs
+			if ( collisions.first( k ) == local )
+				tank.push( collisions.pushX( k ), collisions.pushY( k ) );
+		}
+	}
 
 	/**
 	 * Starts the component
@@ -130,19 +173,24 @@ public class TanksComponent extends JComponent
 	{
 		// Add action listener for local tank timer
 		timer.addActionListener( this::tick );
-		// Start local tank timer
-		timer.start();
+		
+		// Start local tank timer, unless the game loop runs the game
+		if ( loopFps < 0 )
+			timer.start();
 	  
 		// Create bounds object for tanks movement
 		Rectangle2D.Float bounds = new Rectangle2D.Float( 0,0, getWidth(), getHeight() );
 	
 		// Set movement bounds for local tank
 		tank.setMovementBounds( bounds );
-		// Start timer for exchange with Tanks Server
-		exchTimer.start();
+		// Start network thread for exchange with Tanks Server
+		ClientNetwork.start();
 		
-		// Set movement bounds for remote tanks
-		for ( Long player : remoteTanks.keySet() )
-			remoteTanks.get(player).setMovementBounds( bounds );
+		// Start the game loop rendering into the window
+		if ( loopFps >= 0 )
+		{
+			requestFocus();
+			new GameLoop( this, SwingUtilities.getWindowAncestor(this), loopFps ).start();
+		}
 	}
 }
\ No newline at end of file
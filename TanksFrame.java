@@ -6,6 +6,8 @@ import java.awt.Color;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.*;
 
 /**
@@ -59,8 +61,8 @@ public class TanksFrame extends JFrame
 		// Create Frame object for tanks
 		TanksFrame frame = new TanksFrame();
 		
-		// Set dimensions for the window
-		frame.setSize( WIDTH, HEIGHT );
+		// Size the window to fit the component
+		frame.pack();
 		// Set default close operation for the window
 		frame.setDefaultCloseOperation( EXIT_ON_CLOSE );
 		// Make frame visible
@@ -86,18 +88,11 @@ public class TanksFrame extends JFrame
 			 */
 			public void windowClosing( WindowEvent e )
 			{
-				try 
-				{
-					// Send to Tanks Server a packet with all zeros to remove player ID from the list
-					new ClientExchange( "0 0 0 0 0 0" ).call();
-				} 
-				catch ( Exception ex ) 
-				{ }
-				finally
-				{
-					// Exit the program
-					System.exit(0);
-				}
+				// Stop network thread, it tells Tanks Server to remove player ID from the list
+				ClientNetwork.stop();
+				
+				// Exit the program
+				System.exit(0);
 			}
 		};
 	}
@@ -111,6 +106,24 @@ public class TanksFrame extends JFrame
 		port = DEFAULT_PORT;
 		color = DEFAULT_LOCAL_COLOR;
 		
+		// Options start with '-' and may go anywhere, the rest of arguments go in order
+		List<String> rest = new ArrayList<>();
+		
+		for ( String arg : args )
+			// If delay of drawing remote tanks in milliseconds is specified through command line
+			if ( arg.startsWith("-delay=") )
+				TanksComponent.interpDelay = Integer.parseInt( arg.substring(7) );
+			// If the game loop is specified through command line, with the largest frame rate
+			else if ( arg.startsWith("-loop") )
+				TanksComponent.loopFps = arg.startsWith("-loop=") ? Integer.parseInt( arg.substring(6) ) : 0;
+			// If sending local tank's state by dead reckoning is specified through command line
+			else if ( arg.startsWith("-dr") )
+				DeadReckoning.enable( arg.startsWith("-dr=") ? arg.substring(4) : "" );
+			else
+				rest.add( arg );
+		
+		args = rest.toArray( new String[0] );
+		
 		// If there is at least one argument in command line
 		if ( args.length > 0 )
 		{
@@ -2,19 +2,18 @@
  *  Program Name : Tanks
  */
 
-import java.io.DataOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.awt.geom.Rectangle2D;
 import java.net.SocketAddress;
-import java.net.DatagramPacket;
-import java.net.SocketException;
-import java.net.DatagramSocket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Class TanksServer - UDP Server to exchange messages between Tanks client computers
@@ -28,168 +27,770 @@ public class TanksServer
 	// Logger object to log progress messages
     private static final Logger LOG = Logger.getLogger( TanksServer.class.getName() );
     
-    private static final int PACKET_SIZE = 50;
+    // Maximum size of UDP datagram payload
+    static final int MAX_DATAGRAM = 65507;
+    // Minimum time interval in milliseconds between encodings of world snapshot in blocking mode
+    private static final int SNAPSHOT_INTERVAL = 1000 / 60;
+    // Default number of ticks per second in server tick mode
+    private static final int DEFAULT_TICK_RATE = 30;
+    // Maximum number of datagrams handled in one batch in non-blocking mode
+    private static final int MAX_BATCH = 1024;
+    // Default time in milliseconds after which a silent player is removed
+    private static final long DEFAULT_SESSION_TIMEOUT = 10_000;
+    // Resolution of session timeouts in milliseconds
+    private static final long EXPIRY_TICK = 100;
+    // Time interval in milliseconds between metrics reports
+    private static final long METRICS_INTERVAL = 10_000;
+    // Time in milliseconds a player who left is remembered, so its messages delayed past
+    // the leaving do not bring it back
+    private static final long TOMBSTONE_TIME = 5_000;
+    // Largest number of players who left remembered at once
+    private static final int TOMBSTONES = 256;
 
-    // Socket through which to exchange messages
-    private static DatagramSocket socket;
-    // Map object to store players and Tanks's data for the players
-    private static Map<Long, Packet> players;
+    // Players and their tanks' data by players' slots
+    static PlayerStates players = new PlayerStates();
+    // State of all players encoded once per baseline and sent to every client
+    static WorldSnapshot snapshot;
+    // Radius of the area around player's tank in which the player gets other players or 0 for the whole arena
+    static float interestRadius;
+    // Grid with players' positions for finding players in the area of interest
+    static SpatialGrid grid;
+    // Maximum size of datagrams snapshots are split into
+    static int chunkSize = Protocol.DEFAULT_CHUNK_SIZE;
+    // Time in milliseconds after which a silent player is removed
+    static long sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+    // If the server moves tanks by players' inputs instead of taking their states
+    static boolean authoritative;
+    // Bounds tanks move in with authoritative movement
+    private static final Rectangle2D ARENA = new Rectangle2D.Float( 0,0, TanksFrame.WIDTH, TanksFrame.HEIGHT );
+    // Inputs of the message being applied
+    private static final byte[] inputs = new byte[Protocol.MAX_INPUTS];
+    // Buffer for answers to pings
+    private static final ByteBuffer pong = ByteBuffer.allocateDirect( Protocol.PONG_SIZE );
+    // Buffer for answers to control messages
+    private static final ByteBuffer controlOut = ByteBuffer.allocateDirect( Protocol.MAX_CONTROL_SIZE );
+    // Buffer for answers asking players to join again
+    private static final ByteBuffer rejoin = ByteBuffer.allocateDirect( Protocol.REJOIN_SIZE );
+    // Pool of buffers for received messages and encoded snapshots
+    private static BufferPool pool;
+    // Slots of players waiting for response in current batch in non-blocking mode
+    private static int[] pending = new int[64];
+    // Action on keys the selector finds ready, which has nothing to do since there is only one
+    private static final Consumer<SelectionKey> IGNORE_KEY = key -> { };
+    // Timers of players' sessions, belonging to players' slots
+    static TimingWheel<Integer> sessions;
+    // Player whose events are being applied, and receiver of the events made once for all players
+    private static long eventPlayer;
+    private static final ReliableChannel.Listener EVENTS = (type, value) -> applyEvent( eventPlayer, type );
+    // Ring of IDs of players who left and times they left at, by Protocol.time()
+    private static final long[] leftIDs = new long[TOMBSTONES];
+    private static final long[] leftAt = new long[TOMBSTONES];
+    private static int nextTombstone;
+    // Counters of server activity
+    static final ServerMetrics metrics = new ServerMetrics();
+    // Time of the last maintenance and of the last metrics report in milliseconds
+    private static long maintainedAt;
+    private static long reportedAt;
     
     /**
      * Method to start the exchange with client computers
      * @param n Port number for exchange
-     * @throws SocketException
      * @throws IOException
      */
-    private static void start( int n ) throws SocketException, IOException
+    private static void start( int n ) throws IOException
     {
-    	// Create socket object for exchange
-    	socket = new DatagramSocket(n);
-    	// Create Map object for players and their tanks
-    	players = new HashMap<>();
+    	// Create objects for players and their tanks
+    	reset( new BufferPool(MAX_DATAGRAM, 1) );
     	
-    	// Buffer for received and sent messages
-    	final byte[] buf = new byte[50];
-    	// Datagram packet object
-        final DatagramPacket packet = new DatagramPacket( buf, buf.length );
+    	// Buffer for received messages
+    	final ByteBuffer in = ByteBuffer.allocateDirect( MAX_DATAGRAM );
         
-        // Get IP address of the server
-        SocketAddress localSocketAddress = socket.getLocalSocketAddress();
+    	// Create channel object for exchange
+    	try ( DatagramChannel channel = DatagramChannel.open() )
+    	{
+    		channel.bind( new InetSocketAddress(n) );
         
-        LOG.info("Listening at: " + localSocketAddress );
+	        LOG.info("Listening at: " + channel.getLocalAddress() );
         
-        try 
-        {
-            // Loop while thread is not interrupted
-        	while ( !Thread.currentThread().isInterrupted() ) 
-            {
-                LOG.info( "Awaiting request." );
-                // Receive a packet through socket
-                socket.receive( packet );
+	        try
+	        {
+	            // Loop while thread is not interrupted
+	        	while ( !Thread.currentThread().isInterrupted() )
+	            {
+	                LOG.info( "Awaiting request." );
+	                // Receive a message through channel
+	                SocketAddress socketAddress = channel.receive( in.clear() );
+	                in.flip();
+                
+	                // Answer clock synchronization at once, before anything delays it
+	                if ( answerPing( in, pong ) )
+	                {
+	                	channel.send( pong, socketAddress );
+	                	continue;
+	                }
+                
+	                // Apply reliable events and acknowledge them
+	                if ( applyControl( in, controlOut ) )
+	                {
+	                	if ( controlOut.hasRemaining() )
+	                		channel.send( controlOut, socketAddress );
+
+	                	continue;
+	                }
+
+	                // Ask players the server does not know to join again
+	                if ( answerRejoin( in, rejoin ) )
+	                {
+	                	if ( rejoin.hasRemaining() )
+	                		channel.send( rejoin, socketAddress );
+
+	                	continue;
+	                }
+                
+	                // Apply the received message
+	                int slot = update( in, socketAddress );
+
+	                // Send the player's reliable events that are due
+	                if ( slot >= 0 )
+	                	sendControl( channel, slot );
                 
-                // Get IP address where packet came from
-                SocketAddress socketAddress = packet.getSocketAddress();
-                //LOG.info( "Received datagram from: " + socketAddress );
+	                // Expire silent players - in blocking mode only when a datagram comes,
+	                // but without datagrams there is also nobody to send them to
+	                maintain( Protocol.time() );
                 
-                // Handle the received packet and prepare the response packet
-                DatagramPacket resp = handle( packet );
+	                // If the client does not expect a response
+	                if ( slot < 0 )
+	                	continue;
                 
-                LOG.info( "Sending response to: " + resp.getSocketAddress() );
-            	// Send message through the socket
-            	socket.send( resp );
-            }
-        }
-        finally 
-        {
-            LOG.info( "Shutting down." );
-            // Close the socket
-            socket.close();
-        }
-    }
-
-    /**
-     * Handles received packet and prepares packet to send
-     * @param packet Received packet
-     * @return List of packets to send
+	                // Commit world changes if snapshot is outdated long enough
+	                if ( Protocol.time() - snapshot.committedAt() >= SNAPSHOT_INTERVAL )
+	                	snapshot.commit();
+
+	                LOG.info( "Sending response to: " + socketAddress );
+	            	// Send changes since the snapshot acknowledged by the client
+	            	send( channel, slot );
+	            }
+	        }
+	        finally
+	        {
+	            LOG.info( "Shutting down." );
+	        }
+    	}
+    }
+
+    /**
+     * Method to start the exchange with client computers using non-blocking channel.
+     * Received and sent messages go through pooled direct buffers and players' data
+     * is updated in place, so steady-state packet handling does not allocate.
+     * Datagrams are handled in batches: all available requests are applied first,
+     * then world snapshot is encoded once per acknowledged baseline and sent to
+     * every requesting client.
+     * With non-zero tick rate the server does not answer requests but runs its own
+     * fixed-rate tick, pushing world snapshot to every player's last known address
+     * @param n Port number for exchange
+     * @param tickRate Number of ticks per second or 0 to answer every request
      * @throws IOException
      */
-    private static DatagramPacket handle( DatagramPacket packet ) throws IOException 
-    {
-    		  // Create data input data stream object
-    	try ( DataInputStream dataInputStream = new DataInputStream( new ByteArrayInputStream(packet.getData()) ) ) 
-        {
-			// Get IP address where packet came from
-    		SocketAddress socketAddress = packet.getSocketAddress();
-
-			LOG.info( "Reading from: " + socketAddress );
-            
-			// Get data that came with packet 
-			long playerID  = dataInputStream.readLong();
-			long timestamp = dataInputStream.readLong();
-			float x = dataInputStream.readFloat();
-			float y = dataInputStream.readFloat();
-			float r = dataInputStream.readFloat();
-			float d = dataInputStream.readFloat();
-			float s = dataInputStream.readFloat();
-			int c = dataInputStream.readInt();
-			
-			// Create Packet object for data that came with packet and add to the map with player's ID key
-			players.put( playerID, new Packet(timestamp, x, y, r, d, s, c) );
-            
-			// Create response packet
-			packet = writeResponse( socketAddress, playerID );
-			
-			// If came packet with timestamp zero - this player closed the program
-			//if ( timestamp == 0 )
-				// Remove player's ID from the map
-            //	players.remove( playerID );
-            
-			// Return packet to send
-			return packet;
-		}
+    private static void startNio( int n, int tickRate ) throws IOException
+    {
+    	// Create objects for players and their tanks, with a pool of buffers for received and sent messages
+    	reset( new BufferPool(MAX_DATAGRAM, 2) );
+
+    	// Tick duration and time of the next tick in nanoseconds
+    	final long tickTime = tickRate > 0 ? 1_000_000_000L / tickRate : 0;
+    	long nextTick = System.nanoTime() + tickTime;
+
+    	try ( Selector selector = Selector.open();
+    		  DatagramChannel channel = DatagramChannel.open() )
+    	{
+    		// Bind channel to the port and register it for reading
+    		channel.bind( new InetSocketAddress(n) );
+    		channel.configureBlocking( false );
+    		channel.register( selector, SelectionKey.OP_READ );
+
+    		LOG.info( "Listening at: " + channel.getLocalAddress() + " (non-blocking"
+    				  + (tickRate > 0 ? ", " + tickRate + " ticks per second)" : ")") );
+
+    		try
+    		{
+    			// Loop while thread is not interrupted
+    			while ( !Thread.currentThread().isInterrupted() )
+    			{
+    				// The only key is the channel's, so ready keys are not collected into
+    				// the selected-key set, which would allocate an entry every time
+    				if ( tickRate == 0 )
+    					// Wait until there are datagrams to read, but wake up to expire silent players
+    					selector.select( IGNORE_KEY, EXPIRY_TICK );
+    				else
+    				{
+    					long wait = (nextTick - System.nanoTime()) / 1_000_000;
+
+    					// Wait for datagrams to read, but not longer than until the next tick
+    					if ( wait > 0 )
+    						selector.select( IGNORE_KEY, wait );
+    					else
+    						selector.selectNow( IGNORE_KEY );
+    				}
+
+    				handleBatch( channel, tickRate == 0 );
+
+    				// If it's time for the next tick
+    				if ( tickRate > 0 && System.nanoTime() - nextTick >= 0 )
+    				{
+    					tick( channel );
+
+    					nextTick += tickTime;
+
+    					// If server fell behind by more than a tick - skip missed ticks instead of bursting them
+    					if ( System.nanoTime() - nextTick > tickTime )
+    						nextTick = System.nanoTime() + tickTime;
+    				}
+    			}
+    		}
+    		finally
+    		{
+    			LOG.info( "Shutting down." );
+    		}
+    	}
     }
 
-    
-    private static DatagramPacket writeResponse( SocketAddress socketAddress, long playerID ) throws IOException
+    /**
+     * Reads and handles datagrams available on non-blocking channel, expires silent players
+     * and, unless the server runs its own tick, answers every player who sent a state
+     * @param channel Non-blocking channel to read from and send through
+     * @param respond If every player who sent a state gets a snapshot
+     * @return Number of read datagrams
+     * @throws IOException
+     */
+    static int handleBatch( DatagramChannel channel, boolean respond ) throws IOException
     {
-    	int playersSize = players.size();
-    	int arraySize = PACKET_SIZE * Math.max(1, playersSize-1);
-    	
-    	try ( ByteArrayOutputStream byteArray = new ByteArrayOutputStream( arraySize );
-      		  DataOutputStream outStream = new DataOutputStream( byteArray ) )
-      	{
-    		outStream.writeInt( playersSize-1 );
-    		
-    		if ( playersSize > 1 )
-	        	for ( long player : players.keySet() )
-	    			// If player is not the player from whom packet came from
-	            	if ( player != playerID )
-	            		writeToOutStream( outStream, player );
-	         
-    		outStream.close();
-    		
-    		if ( players.get(playerID).timestamp == 0 )
-				// Remove player's ID from the map
-            	players.remove( playerID );
-    		
-    		// Convert output stream into array
-			byte[] buf = byteArray.toByteArray();
-			
-			// Create datagram packet to send
-			return new DatagramPacket( buf, buf.length, socketAddress );
-        }
+    	ByteBuffer in = pool.acquire();
+    	SocketAddress socketAddress;
+    	int numRead = 0;
+    	int numPending = 0;
+
+    	// Read datagrams that are available without blocking
+    	while ( numRead < MAX_BATCH && (socketAddress = channel.receive( in.clear() )) != null )
+    	{
+    		in.flip();
+    		numRead++;
+
+    		// Answer clock synchronization at once, before the batch delays it
+    		if ( answerPing( in, pong ) )
+    		{
+    			channel.send( pong, socketAddress );
+    			continue;
+    		}
+
+    		// Apply reliable events and acknowledge them
+    		if ( applyControl( in, controlOut ) )
+    		{
+    			if ( controlOut.hasRemaining() )
+    				channel.send( controlOut, socketAddress );
+
+    			continue;
+    		}
+
+    		// Ask players the server does not know to join again
+    		if ( answerRejoin( in, rejoin ) )
+    		{
+    			if ( rejoin.hasRemaining() )
+    				channel.send( rejoin, socketAddress );
+
+    			continue;
+    		}
+
+    		// Apply the received message and remember the client to respond to
+    		int slot = update( in, socketAddress );
+
+    		// Send the player's reliable events that are due
+    		if ( slot >= 0 )
+    			sendControl( channel, slot );
+
+    		if ( slot >= 0 && respond )
+    		{
+    			if ( numPending == pending.length )
+    				pending = Arrays.copyOf( pending, numPending * 2 );
+
+    			pending[numPending++] = slot;
+    		}
+    	}
+
+    	pool.release( in );
+
+    	// Expire silent players before their removal goes into a snapshot
+    	maintain( Protocol.time() );
+
+    	if ( respond )
+    	{
+    		// Commit world changes once for the whole batch
+    		snapshot.commit();
+
+    		// Send every requesting client changes since the snapshot it acknowledged,
+    		// unless the client left later in the batch
+    		for ( int i = 0; i < numPending; i++ )
+    			if ( players.address[ pending[i] ] != null )
+    				send( channel, pending[i] );
+    	}
+
+    	return numRead;
     }
-    
+
     /**
-     * Writes to output stream object
-     * @param outStream Output Stream
-     * @param player Player's ID
+     * Runs one server tick - commits world changes and pushes snapshot to every player
+     * @param channel Channel to send snapshot through
      * @throws IOException
      */
-    private static void writeToOutStream( DataOutputStream outStream, long player ) throws IOException
+    static void tick( DatagramChannel channel ) throws IOException
     {
-    	writeToOutStream( outStream, player, players.get(player) );
+    	// Commit world changes once for the tick
+    	snapshot.commit();
+
+    	// Push to every player's last known address changes since the snapshot it acknowledged
+    	for ( int i = 0; i < players.size(); i++ )
+    	{
+    		int slot = players.slotAt( i );
+
+    		if ( players.address[slot] != null )
+    			send( channel, slot );
+    	}
     }
-    
+
     /**
-     * Writes to output stream object
-     * @param outStream Output Stream
-     * @param playerID Player's ID
-     * @param p Packet data to send
+     * Sends player changes since the snapshot the player acknowledged
+     * @param channel Channel to send snapshot through
+     * @param slot Player's slot
      * @throws IOException
      */
-    private static void writeToOutStream( DataOutputStream outStream, long player, Packet pck ) throws IOException
+    private static void send( DatagramChannel channel, int slot ) throws IOException
     {
-    	outStream.writeLong( player );
-    	outStream.writeLong( pck.timestamp );
-    	outStream.writeFloat( pck.x );
-    	outStream.writeFloat( pck.y );
-    	outStream.writeFloat( pck.r );
-    	outStream.writeFloat( pck.d );
-    	outStream.writeFloat( pck.s );
-    	outStream.writeInt( pck.c );
+    	ByteBuffer buf = snapshotFor( slot );
+
+    	metrics.sentBytes += buf.remaining();
+    	metrics.sent += WorldSnapshot.send( channel, buf, players.address[slot] );
     }
-    
+
+    /**
+     * Removes players silent longer than session timeout and periodically logs metrics
+     * @param now Current time in milliseconds from Protocol.time(), which wall clock changes do not move
+     */
+    static void maintain( long now )
+    {
+    	maintainedAt = now;
+    	sessions.advance( now, TanksServer::expire );
+
+    	if ( now - reportedAt >= METRICS_INTERVAL )
+    	{
+    		reportedAt = now;
+    		LOG.info( "Metrics: " + metrics.report(players.size()) );
+    	}
+    }
+
+    /**
+     * Handles expired session timer of the player
+     * @param slot Player's slot
+     */
+    private static void expire( int slot )
+    {
+    	// Timer is not moved on every message, so check when the player was last heard from
+    	if ( maintainedAt - players.timestamp[slot] >= sessionTimeout )
+    	{
+    		LOG.info( "Session expired: " + players.id[slot] );
+    		removePlayer( slot );
+    		metrics.expired++;
+    	}
+    	else
+    		sessions.schedule( players.expiry[slot], players.timestamp[slot] + sessionTimeout );
+    }
+
+    /**
+     * Removes player from the server
+     * @param slot Player's slot
+     */
+    private static void removePlayer( int slot )
+    {
+    	snapshot.removed( players.id[slot], slot );
+    	sessions.cancel( players.expiry[slot] );
+
+    	if ( grid != null )
+    	{
+    		grid.remove( slot );
+
+    		if ( players.interest[slot] != null )
+    			players.interest[slot].clear();
+    	}
+
+    	players.remove( slot );
+    }
+
+    /**
+     * Creates empty table of players, world snapshot, session timers and, if area of interest is used, grid of players' positions
+     * @param pool Pool of buffers to receive messages and encode snapshots into
+     */
+    static void reset( BufferPool pool )
+    {
+    	TanksServer.pool = pool;
+    	players = new PlayerStates();
+    	snapshot = new WorldSnapshot( pool, chunkSize );
+    	snapshot.setFlags( authoritative ? Protocol.FLAG_AUTHORITATIVE : 0 );
+    	sessions = new TimingWheel<>( EXPIRY_TICK, Protocol.time() );
+    	Arrays.fill( leftIDs, 0 );
+    	reportedAt = Protocol.time();
+    	grid = interestRadius > 0 ? new SpatialGrid( TanksFrame.WIDTH, TanksFrame.HEIGHT, interestRadius ) : null;
+    }
+
+    /**
+     * Encodes snapshot to send to the player
+     * @param slot Player's slot
+     * @return Buffer with snapshot ready to be sent
+     */
+    static ByteBuffer snapshotFor( int slot )
+    {
+    	// If area of interest is used - player gets its own snapshot, otherwise a shared one
+    	if ( grid != null )
+    		return snapshot.encode( grid, players, slot, interestRadius, players.ack[slot] );
+    	else
+    		return snapshot.encode( players, players.ack[slot] );
+    }
+
+    /**
+     * Writes answer to PING message, carrying server time of answering
+     * @param in Buffer with received message
+     * @param out Buffer to write the answer into, ready to be sent after that
+     * @return false if the message is not a PING
+     */
+    static boolean answerPing( ByteBuffer in, ByteBuffer out )
+    {
+    	int pos = in.position();
+
+    	if ( in.remaining() < Protocol.PING_SIZE || in.get( pos ) != Protocol.MSG_PING || in.get( pos + 1 ) != Protocol.VERSION )
+    		return false;
+
+    	// Client's time goes back as it came, so the client needs no state to match the answer
+    	out.clear();
+    	out.put( Protocol.MSG_PONG );
+    	out.put( Protocol.VERSION );
+    	out.putLong( in.getLong( pos + 2 ) );
+    	out.putLong( System.nanoTime() );
+    	out.flip();
+
+    	metrics.received++;
+    	metrics.pings++;
+    	metrics.sent++;
+    	metrics.sentBytes += Protocol.PONG_SIZE;
+
+    	return true;
+    }
+
+    /**
+     * Writes answer to STATE message of a player the server does not know and that does not
+     * come to join, as after the player's session expired or the server restarted. Such
+     * a message would make a player without color and slot, so the player is asked to join again
+     * @param in Buffer with received message
+     * @param out Buffer to write the answer into, ready to be sent after that, empty if there is no answer
+     * @return false if the message is not such a STATE
+     */
+    static boolean answerRejoin( ByteBuffer in, ByteBuffer out )
+    {
+    	int pos = in.position();
+
+    	if ( in.remaining() < Protocol.STATE_SIZE || in.get( pos ) != Protocol.MSG_STATE || in.get( pos + 1 ) != Protocol.VERSION
+    		 || (in.get( pos + 2 ) & Protocol.STATE_JOIN) != 0 )
+    		return false;
+
+    	long playerID = in.getLong( pos + 3 );
+
+    	// Player the server knows is updated as usual
+    	if ( players.find( playerID, in.getShort( pos + 11 ) & 0xFFFF ) >= 0 )
+    		return false;
+
+    	metrics.received++;
+
+    	// Player who left is not asked back
+    	if ( hasLeft( playerID ) )
+    	{
+    		out.clear().limit( 0 );
+    		return true;
+    	}
+
+    	out.clear();
+    	out.put( Protocol.MSG_REJOIN );
+    	out.put( Protocol.VERSION );
+    	out.putLong( playerID );
+    	out.flip();
+
+    	metrics.sent++;
+    	metrics.sentBytes += Protocol.REJOIN_SIZE;
+
+    	return true;
+    }
+
+    /**
+     * Applies CONTROL message, delivering the player's events in order, and writes
+     * the answer acknowledging them
+     * @param in Buffer with received message
+     * @param out Buffer to write the answer into, ready to be sent after that, empty if there is no answer
+     * @return false if the message is not a CONTROL
+     */
+    static boolean applyControl( ByteBuffer in, ByteBuffer out )
+    {
+    	int pos = in.position();
+
+    	if ( in.remaining() < Protocol.CONTROL_HEADER_SIZE || in.get( pos ) != Protocol.MSG_CONTROL || in.get( pos + 1 ) != Protocol.VERSION )
+    		return false;
+
+    	metrics.received++;
+    	out.clear().limit( 0 );
+
+    	try
+    	{
+    		in.position( pos + 2 );
+    		long playerID = in.getLong();
+    		int slot = players.find( playerID );
+
+    		// Events of a player who is gone, such as a repeated leaving, are only acknowledged
+    		if ( slot < 0 )
+    		{
+    			ReliableChannel.acknowledgeAll( in, out, playerID );
+    			return true;
+    		}
+
+    		// Leaving frees the slot while the events are read, so the channel is kept to acknowledge them
+    		ReliableChannel control = players.control[slot];
+
+    		eventPlayer = playerID;
+    		control.read( in, EVENTS );
+
+    		if ( !control.write( out, playerID, Protocol.time() ) )
+    			out.limit( 0 );
+    	}
+    	catch ( BufferUnderflowException e )
+    	{
+    		// Ignore truncated messages
+    		out.clear().limit( 0 );
+    	}
+
+    	return true;
+    }
+
+    /**
+     * Sends player's reliable events never sent or not acknowledged for longer than resend
+     * interval. They are checked when the player is heard from, which is often enough to
+     * send them again, and there is nobody to send them to otherwise
+     * @param channel Channel to send through
+     * @param slot Player's slot
+     * @throws IOException
+     */
+    private static void sendControl( DatagramChannel channel, int slot ) throws IOException
+    {
+    	ReliableChannel control = players.control[slot];
+    	long now = Protocol.time();
+
+    	// Slot without a player has no events
+    	if ( control == null )
+    		return;
+
+    	if ( control.nextWrite( now ) > now || !control.write( controlOut, players.id[slot], now ) )
+    		return;
+
+    	metrics.sent++;
+    	metrics.sentBytes += controlOut.remaining();
+    	channel.send( controlOut, players.address[slot] );
+    }
+
+    /**
+     * Applies reliable event of the player
+     * @param playerID Player's ID
+     * @param type Event type
+     */
+    private static void applyEvent( long playerID, int type )
+    {
+    	int slot = players.find( playerID );
+
+    	// If this player closed the program
+    	if ( type == Protocol.EVENT_LEAVE && slot >= 0 )
+    	{
+    		removePlayer( slot );
+    		metrics.left++;
+
+    		// Remember the player for a while, its states may still be on the way
+    		leftIDs[nextTombstone] = playerID;
+    		leftAt[nextTombstone] = Protocol.time();
+    		nextTombstone = (nextTombstone + 1) % TOMBSTONES;
+    	}
+    }
+
+    /**
+     * Checks if the player left a short time ago
+     * @param playerID Player's ID
+     * @return true if messages of the player are late ones, which must not bring it back
+     */
+    private static boolean hasLeft( long playerID )
+    {
+    	long now = Protocol.time();
+
+    	for ( int i = 0; i < TOMBSTONES; i++ )
+    		if ( leftIDs[i] == playerID && now - leftAt[i] < TOMBSTONE_TIME )
+    			return true;
+
+    	return false;
+    }
+
+    /**
+     * Applies received message to players' data
+     * @param in Buffer with received message
+     * @param from Address the message came from
+     * @return Slot of the player who expects a response or -1 if no response is expected
+     */
+    static int update( ByteBuffer in, SocketAddress from )
+    {
+    	int flags;
+    	long playerID;
+    	int ack;
+    	int knownSlot;
+    	float x, y, r, d, s;
+    	int c = 0;
+    	int firstInput = 0;
+    	int numInputs = 0;
+
+    	metrics.received++;
+
+    	try
+    	{
+    		// Ignore messages of unknown type and other versions
+    		if ( in.get() != Protocol.MSG_STATE || in.get() != Protocol.VERSION )
+    			return -1;
+
+	    	// Get data that came with message
+	    	flags = in.get();
+	    	playerID  = in.getLong();
+	    	knownSlot = in.getShort() & 0xFFFF;
+	    	ack = in.getInt();
+	    	x = Protocol.position( in.getShort() );
+	    	y = Protocol.position( in.getShort() );
+	    	r = Protocol.angle( in.get() );
+	    	d = Protocol.angle( in.get() );
+	    	s = Protocol.speed( in.get() );
+
+	    	// Color comes only until the player has joined
+	    	if ( (flags & Protocol.STATE_JOIN) != 0 )
+	    		c = in.getInt();
+
+	    	// Inputs the server has not acknowledged yet
+	    	if ( (flags & Protocol.STATE_INPUTS) != 0 )
+	    	{
+	    		firstInput = in.getInt();
+	    		numInputs = in.get() & 0xFF;
+
+	    		// Ignore messages with more inputs than any client sends
+	    		if ( numInputs > Protocol.MAX_INPUTS )
+	    			return -1;
+
+	    		in.get( inputs, 0, numInputs );
+	    	}
+    	}
+    	catch ( BufferUnderflowException e )
+    	{
+    		// Ignore truncated messages
+    		return -1;
+    	}
+
+    	// Ignore messages with ID 0, which marks free slots and no client has
+    	if ( playerID == 0 )
+    		return -1;
+
+    	int slot = players.find( playerID, knownSlot );
+
+    	// Sequence number of the snapshot that will carry changes
+    	int seq = snapshot.nextSeq();
+    	int[] changed = players.changed;
+
+    	// If it's a new player - take a slot for the player with all fields changed
+    	if ( slot < 0 )
+    	{
+    		// Only a joining message creates a player, others are answered by asking to join again,
+    		// and a player who just left does not come back by its joining message coming late
+    		if ( (flags & Protocol.STATE_JOIN) == 0 || hasLeft( playerID ) )
+    			return -1;
+
+    		slot = players.add( playerID );
+
+    		// If all slots are taken - the player can't join
+    		if ( slot < 0 )
+    		{
+    			LOG.warning( "No free slot for player: " + playerID );
+    			return -1;
+    		}
+
+    		changed = players.changed;
+    		Arrays.fill( changed, slot * Protocol.NUM_FIELDS, (slot + 1) * Protocol.NUM_FIELDS, seq );
+    		metrics.joined++;
+
+    		// Input goes only with authoritative movement, other clients have no use for it
+    		if ( !authoritative )
+    			changed[slot * Protocol.NUM_FIELDS + Protocol.INDEX_I] = 0;
+
+    		// Tell the player its slot, reliably
+    		players.control[slot] = new ReliableChannel();
+    		players.control[slot].send( Protocol.EVENT_JOINED, slot );
+
+    		// Tank moved by the server starts from the joining state, which comes after the last input
+    		if ( authoritative )
+    		{
+    			players.tank[slot] = new TankImpl( ARENA, 0, 0, playerID );
+    			players.tank[slot].place( x, y, r, d, s );
+    			players.input[slot] = numInputs > 0 ? firstInput + numInputs - 1 : 0;
+    			numInputs = 0;
+    		}
+    	}
+
+    	int base = slot * Protocol.NUM_FIELDS;
+    	TankImpl tank = players.tank[slot];
+
+    	// Move the tank by inputs not applied yet and take its state instead of the sent one
+    	if ( tank != null )
+    	{
+    		for ( int i = Math.max( players.input[slot] - firstInput + 1, 0 ); i < numInputs; i++ )
+    			tank.move( inputs[i] );
+
+    		if ( numInputs > 0 && firstInput + numInputs - 1 > players.input[slot] )
+    		{
+    			players.input[slot] = firstInput + numInputs - 1;
+    			changed[base + Protocol.INDEX_I] = seq;
+    		}
+
+    		x = tank.x;
+    		y = tank.y;
+    		r = tank.r;
+    		d = tank.d;
+    		s = tank.s;
+    	}
+
+    	// Update player's data in place, stamping changed fields with sequence number
+    	if ( players.x[slot] != x ) { players.x[slot] = x; changed[base + Protocol.INDEX_X] = seq; }
+    	if ( players.y[slot] != y ) { players.y[slot] = y; changed[base + Protocol.INDEX_Y] = seq; }
+    	if ( players.r[slot] != r ) { players.r[slot] = r; changed[base + Protocol.INDEX_R] = seq; }
+    	if ( players.d[slot] != d ) { players.d[slot] = d; changed[base + Protocol.INDEX_D] = seq; }
+    	if ( players.s[slot] != s ) { players.s[slot] = s; changed[base + Protocol.INDEX_S] = seq; }
+    	if ( (flags & Protocol.STATE_JOIN) != 0 && players.c[slot] != c ) { players.c[slot] = c; changed[base + Protocol.INDEX_C] = seq; }
+
+    	// Keep player's position in the grid up to date
+    	if ( grid != null )
+    		grid.move( slot, x, y );
+
+    	players.address[slot] = from;
+    	players.timestamp[slot] = Protocol.time();
+    	players.ack[slot] = ack;
+
+    	// Session timer of a new player starts here, later messages only move the timestamp
+    	if ( !players.expiry[slot].isScheduled() )
+    		sessions.schedule( players.expiry[slot], players.timestamp[slot] + sessionTimeout );
+
+    	snapshot.invalidate();
+
+    	return slot;
+    }
+
     /**
      * Starts the program
      * @param args Command line arguments
@@ -199,50 +800,40 @@ public class TanksServer
     {
         // Get default port number from constant
     	int port = DEFAULT_PORT;
+    	boolean nio = false;
+    	int tickRate = 0;
         
-    	// If another port is specified through command line
-        if ( args.length > 0 ) 
-        	// Get port number from command line
-        	port = Integer.parseInt( args[0] );
+    	for ( String arg : args )
+    		// If non-blocking mode is specified through command line
+    		if ( arg.equals("-nio") )
+    			nio = true;
+    		// If server tick mode is specified through command line
+    		else if ( arg.startsWith("-tick") )
+    		{
+    			nio = true;
+    			tickRate = arg.startsWith("-tick=") ? Integer.parseInt( arg.substring(6) ) : DEFAULT_TICK_RATE;
+    		}
+    		// If area of interest is specified through command line
+    		else if ( arg.startsWith("-aoi=") )
+    			interestRadius = Float.parseFloat( arg.substring(5) );
+    		// If snapshot chunk size is specified through command line
+    		else if ( arg.startsWith("-chunk=") )
+    			chunkSize = Integer.parseInt( arg.substring(7) );
+    		// If authoritative movement is specified through command line
+    		else if ( arg.equals("-auth") )
+    			authoritative = true;
+    		// If session timeout in seconds is specified through command line
+    		else if ( arg.startsWith("-timeout=") )
+    			sessionTimeout = (long) (Double.parseDouble( arg.substring(9) ) * 1000);
+    		// If another port is specified through command line
+    		else
+    			// Get port number from command line
+    			port = Integer.parseInt( arg );
         
         // Start the exchange process
-        start( port );
+    	if ( nio )
+    		startNio( port, tickRate );
+    	else
+    		start( port );
     }
-    
-    /**
-     * Class Packet - Stores Tank data
-     * @author Peter Cross
-     * @version April 5, 2017
-     */
-    private static class Packet
-    {
-    	private long timestamp;	// Time stamp
-    	private float x;		// X coordinate
-    	private float y;		// Y coordinate
-    	private float r;		// Radius
-    	private float d;		// Direction
-    	private float s;		// Speed 
-    	private int c;			// Color
-    	
-    	/**
-    	 * Class constructor
-    	 * @param timestamp Time stamp
-    	 * @param x X coordinate
-    	 * @param y Y coordinate
-    	 * @param r Radius
-    	 * @param d Direction
-    	 * @param s Speed 
-    	 * @param c Color
-    	 */
-    	public Packet( long timestamp, float x, float y, float r, float d, float s, int c )
-    	{
-    		this.timestamp = timestamp;
-    		this.x = x;
-    		this.y = y;
-    		this.r = r;
-    		this.d = d;
-    		this.s = s;
-    		this.c = c;
-    	}
-    }
-}
\ No newline at end of file
+}
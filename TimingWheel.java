@@ -0,0 +1,233 @@
+/**
+ *  Program Name : Tanks
+ */
+
+/**
+ * Class TimingWheel - hierarchical timing wheel for timers of many objects.
+ * Time is divided into ticks, and every level of the wheel has 64 slots, each covering
+ * 64 times more ticks than a slot of the level below. A timer is linked into the slot of
+ * its deadline, so scheduling and canceling cost O(1), and advancing the wheel visits only
+ * the slot of the current tick. When the lowest level wraps around, timers of the next
+ * slot of the level above are spread into the levels below
+ * @param <T> Type of objects the timers belong to
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class TimingWheel<T>
+{
+	// Number of bits of slot index and number of slots in every level
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	// Number of levels
+	private static final int LEVELS = 4;
+	// Number of ticks the wheel covers
+	private static final long RANGE = 1L << (SLOT_BITS * LEVELS);
+
+	private final long tickTime;	// Duration of one tick in milliseconds
+	private final long startTime;	// Time of tick 0 in milliseconds
+	private long now;				// Last processed tick
+	private int size;				// Number of scheduled timers
+
+	// First timer in every slot of every level
+	private final Timer<?>[][] slots = new Timer<?>[LEVELS][SLOTS];
+
+	/**
+	 * Class Timer - timer of an object, linked into a slot of the wheel while it's scheduled
+	 * @param <T> Type of the object
+	 * @author Peter Cross
+	 * @version April 5, 2017
+	 */
+	public static class Timer<T>
+	{
+		final T owner;			// Object the timer belongs to
+		long deadline;			// Tick the timer expires at
+		int level = -1;			// Level of the wheel the timer is in or -1 if it's not scheduled
+		int slot;				// Slot of the level the timer is in
+		Timer<T> prev;			// Previous timer in the same slot
+		Timer<T> next;			// Next timer in the same slot
+
+		/**
+		 * Class constructor
+		 * @param owner Object the timer belongs to
+		 */
+		public Timer( T owner )
+		{
+			this.owner = owner;
+		}
+
+		/**
+		 * Checks if timer is scheduled
+		 * @return true if timer is in the wheel
+		 */
+		public boolean isScheduled()
+		{
+			return level >= 0;
+		}
+	}
+
+	/**
+	 * Interface Expiry - action on expired timer
+	 * @param <T> Type of objects the timers belong to
+	 */
+	@FunctionalInterface
+	public interface Expiry<T>
+	{
+		// Handles object whose timer expired
+		void expired( T owner );
+	}
+
+	/**
+	 * Class constructor
+	 * @param tickTime Duration of one tick in milliseconds
+	 * @param startTime Current time in milliseconds
+	 */
+	public TimingWheel( long tickTime, long startTime )
+	{
+		if ( tickTime <= 0 )
+			throw new IllegalArgumentException();
+
+		this.tickTime = tickTime;
+		this.startTime = startTime;
+	}
+
+	/**
+	 * Gets number of scheduled timers
+	 * @return Number of timers
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Schedules timer, moving it if it is already scheduled. Timer expires at
+	 * the first tick that starts at or after the specified time
+	 * @param timer Timer to schedule
+	 * @param time Time to expire at in milliseconds
+	 */
+	public void schedule( Timer<T> timer, long time )
+	{
+		cancel( timer );
+
+		// Deadline is never in the past, and farther than the wheel covers it's clamped,
+		// so the timer expires early and its owner has to schedule it again
+		long deadline = (time - startTime + tickTime - 1) / tickTime;
+		timer.deadline = Math.min( Math.max(deadline, now + 1), now + RANGE - 1 );
+
+		link( timer );
+		size++;
+	}
+
+	/**
+	 * Removes timer from the wheel if it is scheduled
+	 * @param timer Timer to remove
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void cancel( Timer<T> timer )
+	{
+		if ( timer.level < 0 )
+			return;
+
+		if ( timer.prev != null )
+			timer.prev.next = timer.next;
+		else
+			slots[timer.level][timer.slot] = timer.next;
+
+		if ( timer.next != null )
+			timer.next.prev = timer.prev;
+
+		timer.level = -1;
+		timer.prev = null;
+		timer.next = null;
+		size--;
+	}
+
+	/**
+	 * Advances the wheel to specified time, expiring timers of all ticks passed
+	 * @param time Current time in milliseconds
+	 * @param expiry Action on every expired timer's owner
+	 * @return Number of expired timers
+	 */
+	@SuppressWarnings( "unchecked" )
+	public int advance( long time, Expiry<T> expiry )
+	{
+		long target = (time - startTime) / tickTime;
+		int expired = 0;
+
+		while ( now < target )
+		{
+			now++;
+
+			// If lower level wrapped around - spread timers of the next slot of the level above
+			for ( int level = 1; level < LEVELS && (now & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++ )
+				cascade( level, (int) (now >>> (SLOT_BITS * level)) & SLOT_MASK );
+
+			int slot = (int) now & SLOT_MASK;
+
+			// Expire all timers of the current tick. The owner may schedule timer again,
+			// and it always goes to a later tick, so the slot is taken from its head every time
+			Timer<T> timer;
+
+			while ( (timer = (Timer<T>) slots[0][slot]) != null )
+			{
+				cancel( timer );
+				expired++;
+				expiry.expired( timer.owner );
+			}
+		}
+
+		return expired;
+	}
+
+	/**
+	 * Moves timers of the slot into lower levels according to their deadlines
+	 * @param level Level of the slot
+	 * @param slot Slot to move timers from
+	 */
+	@SuppressWarnings( "unchecked" )
+	private void cascade( int level, int slot )
+	{
+		Timer<T> timer = (Timer<T>) slots[level][slot];
+		slots[level][slot] = null;
+
+		while ( timer != null )
+		{
+			Timer<T> next = timer.next;
+
+			timer.prev = null;
+			timer.next = null;
+			link( timer );
+
+			timer = next;
+		}
+	}
+
+	/**
+	 * Links timer into the slot of its deadline
+	 * @param timer Timer to link
+	 */
+	@SuppressWarnings( "unchecked" )
+	private void link( Timer<T> timer )
+	{
+		long delta = timer.deadline - now;
+		int level = 0;
+
+		// Find the lowest level whose slots cover the deadline
+		while ( level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1)) )
+			level++;
+
+		int slot = (int) (timer.deadline >>> (SLOT_BITS * level)) & SLOT_MASK;
+		Timer<T> head = (Timer<T>) slots[level][slot];
+
+		timer.level = level;
+		timer.slot = slot;
+		timer.prev = null;
+		timer.next = head;
+
+		if ( head != null )
+			head.prev = timer;
+
+		slots[level][slot] = timer;
+	}
+}
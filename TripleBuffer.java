@@ -0,0 +1,71 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Class TripleBuffer - lock-free hand-off of the latest value from one writer thread
+ * to one reader thread. The writer fills its own back buffer and publishes it by
+ * swapping it with the middle one, the reader takes the middle buffer when a newer one
+ * is published. Neither side waits for the other or allocates, and the reader always
+ * sees a completely written value
+ * @param <T> Type of buffers
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class TripleBuffer<T>
+{
+	// Bit of the middle index set when the middle buffer is published and not taken yet
+	private static final int FRESH = 4;
+	private static final int INDEX = 3;
+
+	private final Object[] buffers = new Object[3];
+	// Index of the middle buffer, exchanged by both threads
+	private final AtomicInteger middle = new AtomicInteger( 1 );
+	private int back = 0;	// Index of the buffer owned by the writer
+	private int front = 2;	// Index of the buffer owned by the reader
+
+	/**
+	 * Class constructor
+	 * @param factory Creates each of three buffers
+	 */
+	public TripleBuffer( Supplier<T> factory )
+	{
+		for ( int i = 0; i < buffers.length; i++ )
+			buffers[i] = factory.get();
+	}
+
+	/**
+	 * Gets buffer to write the next value into, called by the writer only.
+	 * It holds some older value, so the writer has to write the value completely
+	 * @return Back buffer
+	 */
+	@SuppressWarnings( "unchecked" )
+	public T back()
+	{
+		return (T) buffers[back];
+	}
+
+	/**
+	 * Publishes the back buffer, called by the writer only
+	 */
+	public void publish()
+	{
+		back = middle.getAndSet( back | FRESH ) & INDEX;
+	}
+
+	/**
+	 * Gets the latest published value, called by the reader only
+	 * @return Front buffer, the same as before if nothing was published since
+	 */
+	@SuppressWarnings( "unchecked" )
+	public T front()
+	{
+		if ( (middle.get() & FRESH) != 0 )
+			front = middle.getAndSet( front ) & INDEX;
+
+		return (T) buffers[front];
+	}
+}
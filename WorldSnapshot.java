@@ -0,0 +1,541 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Class WorldSnapshot - state of all players serialized as delta against the snapshot
+ * a client acknowledged. Every field of a player is stamped with the sequence number
+ * of the snapshot it last changed in, so the delta against a baseline carries only
+ * fields stamped after it and idle players cost nothing. Encodings are cached per
+ * baseline until the next commit, so clients that acknowledged the same snapshot
+ * share one encoding. Every client's own record is left in the snapshot and the
+ * client skips it by its player ID.
+ * With area of interest, every client gets its own encoding with only the players
+ * within the interest radius of its tank.
+ * An encoding is split into chunks not longer than the chunk size, laid out one after
+ * another in the buffer, and every chunk is sent as a separate datagram
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class WorldSnapshot
+{
+	// Number of encodings for different baselines cached between commits
+	private static final int CACHE_SIZE = 8;
+	// Number of remembered removals of players
+	private static final int REMOVALS_SIZE = 256;
+
+	private final BufferPool pool;	// Pool of buffers to encode snapshots into
+	private ByteBuffer scratch;		// Buffer for encodings of a single client
+	private final int chunkSize;	// Maximum size of one chunk of encoding
+	private int flags;				// Flags every chunk carries, such as FLAG_AUTHORITATIVE
+
+	private int seq;				// Sequence number of the last committed snapshot
+	private boolean dirty;			// If players' data changed since last commit
+	private long committedAt;		// Server time of last commit in milliseconds
+
+	// Baselines and encodings of the current snapshot against them
+	private final int[] cachedBaselines = new int[CACHE_SIZE];
+	private final ByteBuffer[] cached = new ByteBuffer[CACHE_SIZE];
+	private int numCached;			// Number of valid cached encodings
+	private int nextCached;			// Position of next cached encoding to replace
+
+	// Ring of removed players, their slots and sequence numbers of snapshots they were removed in
+	private final long[] removedIDs = new long[REMOVALS_SIZE];
+	private final int[] removedSlots = new int[REMOVALS_SIZE];
+	private final int[] removedSeqs = new int[REMOVALS_SIZE];
+	private int numRemoved;			// Total number of removals
+	private int horizon;			// Oldest baseline for which all removals are remembered
+
+	// Positions of chunks of the encoding being written
+	private final int[] chunkStarts = new int[Protocol.MAX_CHUNKS];
+	private int numChunks;			// Number of chunks written so far
+	private int chunkRecords;		// Number of records in the last chunk
+	private int chunkBaseline;		// Baseline of the encoding being written
+
+	/**
+	 * Class constructor
+	 * @param pool Pool of buffers to encode snapshots into
+	 */
+	public WorldSnapshot( BufferPool pool )
+	{
+		this( pool, Protocol.DEFAULT_CHUNK_SIZE );
+	}
+
+	/**
+	 * Class constructor
+	 * @param pool Pool of buffers to encode snapshots into
+	 * @param chunkSize Maximum size of one chunk of encoding
+	 */
+	public WorldSnapshot( BufferPool pool, int chunkSize )
+	{
+		// Every chunk must fit at least one record of any size
+		if ( chunkSize < Protocol.SNAPSHOT_HEADER_SIZE + Protocol.MAX_RECORD_SIZE )
+			throw new IllegalArgumentException( "Chunk size is too small: " + chunkSize );
+
+		this.pool = pool;
+		this.chunkSize = Math.min( chunkSize, pool.bufferSize() );
+	}
+
+	/**
+	 * Gets sequence number of the snapshot that will carry current changes
+	 * @return Sequence number to stamp changed fields with
+	 */
+	public int nextSeq()
+	{
+		return seq + 1;
+	}
+
+	/**
+	 * Gets sequence number of the last committed snapshot
+	 * @return Sequence number
+	 */
+	public int seq()
+	{
+		return seq;
+	}
+
+	/**
+	 * Marks that players' data changed since last commit
+	 */
+	public void invalidate()
+	{
+		dirty = true;
+	}
+
+	/**
+	 * Remembers that player was removed, so clients get the removal in their deltas
+	 * @param playerID Player's ID
+	 * @param slot Player's slot
+	 */
+	public void removed( long playerID, int slot )
+	{
+		int i = numRemoved++ % REMOVALS_SIZE;
+
+		// If the oldest removal is overwritten, older baselines can't get it anymore
+		if ( numRemoved > REMOVALS_SIZE )
+			horizon = removedSeqs[i];
+
+		removedIDs[i] = playerID;
+		removedSlots[i] = slot;
+		removedSeqs[i] = nextSeq();
+
+		dirty = true;
+	}
+
+	/**
+	 * Gets time of last commit
+	 * @return Server time in milliseconds
+	 */
+	public long committedAt()
+	{
+		return committedAt;
+	}
+
+	/**
+	 * Commits changes since last commit into a new snapshot
+	 * @return true if there were changes to commit
+	 */
+	public boolean commit()
+	{
+		committedAt = Protocol.time();
+
+		if ( !dirty )
+			return false;
+
+		seq++;
+		dirty = false;
+
+		// Release encodings of the previous snapshot
+		for ( int i = 0; i < numCached; i++ )
+			pool.release( cached[i] );
+
+		numCached = 0;
+		nextCached = 0;
+
+		return true;
+	}
+
+	/**
+	 * Encodes current snapshot as delta against the baseline. Sending consumes the buffer,
+	 * so it has to be taken again for every client and sent with send()
+	 * @param players Players' data
+	 * @param baseline Sequence number of the snapshot acknowledged by the client
+	 * @return Buffer positioned at the start of encoded snapshot
+	 */
+	public ByteBuffer encode( PlayerStates players, int baseline )
+	{
+		// If baseline is unknown or too old to get all removals - send full snapshot
+		if ( baseline > seq || baseline < horizon )
+			baseline = 0;
+
+		for ( int i = 0; i < numCached; i++ )
+			if ( cachedBaselines[i] == baseline )
+				return cached[i].position( 0 );
+
+		ByteBuffer buf;
+
+		// If cache is full - reuse the buffer of the oldest cached encoding
+		if ( numCached == CACHE_SIZE )
+		{
+			buf = cached[nextCached].clear();
+		}
+		else
+		{
+			buf = pool.acquire();
+			nextCached = numCached++;
+		}
+
+		write( buf, players, baseline );
+
+		cachedBaselines[nextCached] = baseline;
+		cached[nextCached] = buf;
+		nextCached = (nextCached + 1) % CACHE_SIZE;
+
+		return buf.position( 0 );
+	}
+
+	/**
+	 * Encodes current snapshot for a single client as delta against the baseline, with
+	 * only the players within the interest radius of the client's tank. The buffer is
+	 * reused by the next call and has to be sent with send()
+	 * @param grid Grid with players' positions by their slots
+	 * @param players Players' data
+	 * @param client Slot of the client's player
+	 * @param radius Interest radius
+	 * @param baseline Sequence number of the snapshot acknowledged by the client
+	 * @return Buffer positioned at the start of encoded snapshot
+	 */
+	public ByteBuffer encode( SpatialGrid grid, PlayerStates players, int client, float radius, int baseline )
+	{
+		// If baseline is unknown - send full snapshot
+		if ( baseline > seq )
+			baseline = 0;
+
+		if ( players.interest[client] == null )
+			players.interest[client] = new InterestSet();
+
+		InterestSet interest = players.interest[client];
+
+		// Snapshots encoded before the next commit are all labeled with current sequence
+		// number, so a player counts as known to the client only after the next one
+		int stamp = nextSeq();
+
+		// Update the area of interest of the client
+		for ( int i = grid.query( players.x[client], players.y[client], radius ) - 1; i >= 0; i-- )
+		{
+			int slot = grid.result( i );
+
+			if ( slot != client )
+				interest.seen( players.id[slot], slot, stamp );
+		}
+
+		interest.sweep( stamp );
+
+		if ( scratch == null )
+			scratch = pool.acquire();
+
+		ByteBuffer buf = scratch.clear();
+		boolean complete = true;
+
+		beginEncoding( buf, baseline );
+
+		for ( int i = interest.size() - 1; i >= 0; i-- )
+		{
+			InterestSet.Entry e = interest.entryAt( i );
+			int mask;
+
+			if ( e.left != 0 )
+			{
+				// If the client acknowledged a snapshot without the player - forget it
+				if ( baseline == 0 || e.left <= baseline )
+				{
+					interest.removeAt( i );
+					continue;
+				}
+
+				mask = Protocol.REMOVED;
+			}
+			else
+				// Players that entered the area after the baseline go in full
+				mask = e.entered > baseline ? joinFields() : changedSince( players, e.slot, baseline );
+
+			if ( mask == 0 )
+				continue;
+
+			// If record does not fit - the client must not acknowledge this snapshot
+			if ( !beginRecord(buf, Protocol.recordSize(mask)) )
+			{
+				complete = false;
+				break;
+			}
+
+			if ( mask == Protocol.REMOVED )
+				writeRemoved( buf, interest.idAt(i), e.slot );
+			else
+				writeRecord( buf, players, e.slot, mask );
+		}
+
+		endEncoding( buf, complete );
+
+		return buf;
+	}
+
+	/**
+	 * Sends encoded snapshot chunk by chunk, every chunk in its own datagram
+	 * @param channel Channel to send through
+	 * @param buf Buffer with encoded snapshot
+	 * @param address Address to send to
+	 * @return Number of sent datagrams
+	 * @throws IOException
+	 */
+	public static int send( DatagramChannel channel, ByteBuffer buf, SocketAddress address ) throws IOException
+	{
+		int end = buf.limit();
+		int sent = 0;
+
+		try
+		{
+			for ( int pos = buf.position(); pos < end; pos = buf.limit() )
+			{
+				buf.limit( end ).position( pos );
+				buf.limit( pos + (buf.getShort(pos + Protocol.SNAPSHOT_LENGTH_OFFSET) & 0xFFFF) );
+
+				// Datagram that does not fit into socket's send buffer is dropped
+				if ( channel.send( buf, address ) > 0 )
+					sent++;
+			}
+		}
+		finally
+		{
+			// Cached encoding is shared, so leave it whole for the next client
+			buf.limit( end );
+		}
+
+		return sent;
+	}
+
+	/**
+	 * Writes snapshot into the buffer
+	 * @param buf Buffer to write into
+	 * @param players Players' data
+	 * @param baseline Sequence number of baseline snapshot or 0 for full snapshot
+	 */
+	private void write( ByteBuffer buf, PlayerStates players, int baseline )
+	{
+		boolean complete = true;
+
+		beginEncoding( buf, baseline );
+
+		// Write removals since baseline
+		if ( baseline != 0 )
+			for ( int i = Math.max(0, numRemoved - REMOVALS_SIZE); i < numRemoved && complete; i++ )
+			{
+				int pos = i % REMOVALS_SIZE;
+
+				if ( removedSeqs[pos] > baseline && removedSeqs[pos] <= seq )
+				{
+					if ( !beginRecord(buf, Protocol.recordSize(Protocol.REMOVED)) )
+					{
+						complete = false;
+						break;
+					}
+
+					writeRemoved( buf, removedIDs[pos], removedSlots[pos] );
+				}
+			}
+
+		// Write players' fields changed since baseline
+		for ( int i = 0; i < players.size() && complete; i++ )
+		{
+			int slot = players.slotAt( i );
+			int mask = changedSince( players, slot, baseline );
+
+			if ( mask == 0 )
+				continue;
+
+			// If record does not fit - the client must not acknowledge this snapshot
+			if ( !beginRecord(buf, Protocol.recordSize(mask)) )
+			{
+				complete = false;
+				break;
+			}
+
+			writeRecord( buf, players, slot, mask );
+		}
+
+		endEncoding( buf, complete );
+	}
+
+	/**
+	 * Starts writing encoding with its first chunk
+	 * @param buf Buffer to write into
+	 * @param baseline Sequence number of baseline snapshot or 0 for full snapshot
+	 */
+	private void beginEncoding( ByteBuffer buf, int baseline )
+	{
+		chunkBaseline = baseline;
+		numChunks = 0;
+
+		beginChunk( buf );
+	}
+
+	/**
+	 * Writes header of the next chunk. Number of chunks, flags, length and number
+	 * of records are filled in when the encoding ends
+	 * @param buf Buffer to write into
+	 */
+	private void beginChunk( ByteBuffer buf )
+	{
+		chunkStarts[numChunks] = buf.position();
+		chunkRecords = 0;
+
+		buf.put( Protocol.MSG_SNAPSHOT );
+		buf.put( Protocol.VERSION );
+		buf.putInt( seq );
+		buf.putInt( chunkBaseline );
+		buf.put( (byte) 0 );
+		buf.put( (byte) numChunks++ );
+		buf.put( (byte) 0 );
+		buf.putShort( (short) 0 );
+		buf.putShort( (short) 0 );
+		buf.putLong( committedAt );
+	}
+
+	/**
+	 * Makes room for the next record, starting a new chunk if the record does not fit into the current one
+	 * @param buf Buffer to write into
+	 * @param size Size of the record
+	 * @return false if the record does not fit into the buffer
+	 */
+	private boolean beginRecord( ByteBuffer buf, int size )
+	{
+		// If record does not fit into the current chunk - start the next one
+		if ( buf.position() - chunkStarts[numChunks - 1] + size > chunkSize )
+		{
+			if ( numChunks == Protocol.MAX_CHUNKS || buf.remaining() < Protocol.SNAPSHOT_HEADER_SIZE + size )
+				return false;
+
+			endChunk( buf );
+			beginChunk( buf );
+		}
+		else if ( buf.remaining() < size )
+			return false;
+
+		chunkRecords++;
+
+		return true;
+	}
+
+	/**
+	 * Fills in length and number of records of the last chunk
+	 * @param buf Buffer being written
+	 */
+	private void endChunk( ByteBuffer buf )
+	{
+		int start = chunkStarts[numChunks - 1];
+
+		buf.putShort( start + Protocol.SNAPSHOT_LENGTH_OFFSET, (short) (buf.position() - start) );
+		buf.putShort( start + Protocol.SNAPSHOT_LENGTH_OFFSET + 2, (short) chunkRecords );
+	}
+
+	/**
+	 * Sets flags every chunk of later encodings carries
+	 * @param flags Snapshot flags, such as FLAG_AUTHORITATIVE
+	 */
+	public void setFlags( int flags )
+	{
+		this.flags = flags;
+	}
+
+	/**
+	 * Finishes encoding, filling in number of chunks and flags of every chunk
+	 * @param buf Buffer being written
+	 * @param complete false if some records did not fit into the buffer
+	 */
+	private void endEncoding( ByteBuffer buf, boolean complete )
+	{
+		endChunk( buf );
+
+		for ( int i = 0; i < numChunks; i++ )
+		{
+			buf.put( chunkStarts[i] + Protocol.SNAPSHOT_FLAGS_OFFSET, (byte) (complete ? flags : flags | Protocol.FLAG_PARTIAL) );
+			buf.put( chunkStarts[i] + Protocol.SNAPSHOT_CHUNK_OFFSET + 1, (byte) numChunks );
+		}
+
+		buf.flip();
+	}
+
+	/**
+	 * Gets mask of fields of a player new to the client
+	 * @return Fields mask, with input only if the server moves tanks
+	 */
+	private int joinFields()
+	{
+		return (flags & Protocol.FLAG_AUTHORITATIVE) != 0 ? Protocol.ALL_FIELDS : Protocol.JOIN_FIELDS;
+	}
+
+	/**
+	 * Gets mask of player's fields changed since baseline
+	 * @param players Players' data
+	 * @param slot Player's slot
+	 * @param baseline Sequence number of baseline snapshot or 0 for all fields
+	 * @return Changed fields mask
+	 */
+	private int changedSince( PlayerStates players, int slot, int baseline )
+	{
+		int[] changed = players.changed;
+		int base = slot * Protocol.NUM_FIELDS;
+		int mask = 0;
+
+		for ( int f = 0; f < Protocol.NUM_FIELDS; f++ )
+			// Fields changed after the last commit go into the next snapshot
+			if ( changed[base + f] > baseline && changed[base + f] <= seq )
+				mask |= 1 << f;
+
+		return mask;
+	}
+
+	/**
+	 * Writes player's record with specified fields into the buffer
+	 * @param buf Buffer to write into
+	 * @param players Players' data
+	 * @param slot Player's slot
+	 * @param mask Fields to write
+	 */
+	static void writeRecord( ByteBuffer buf, PlayerStates players, int slot, int mask )
+	{
+		buf.putShort( (short) slot );
+		buf.put( (byte) mask );
+
+		// Record with color binds the slot to player's ID
+		if ( (mask & Protocol.FIELD_C) != 0 )
+			buf.putLong( players.id[slot] );
+
+		if ( (mask & Protocol.FIELD_X) != 0 ) buf.putShort( Protocol.position(players.x[slot]) );
+		if ( (mask & Protocol.FIELD_Y) != 0 ) buf.putShort( Protocol.position(players.y[slot]) );
+		if ( (mask & Protocol.FIELD_R) != 0 ) buf.put( Protocol.angle(players.r[slot]) );
+		if ( (mask & Protocol.FIELD_D) != 0 ) buf.put( Protocol.angle(players.d[slot]) );
+		if ( (mask & Protocol.FIELD_S) != 0 ) buf.put( Protocol.speed(players.s[slot]) );
+		if ( (mask & Protocol.FIELD_C) != 0 ) buf.putInt( players.c[slot] );
+		if ( (mask & Protocol.FIELD_I) != 0 ) buf.putInt( players.input[slot] );
+	}
+
+	/**
+	 * Writes record of removed player into the buffer
+	 * @param buf Buffer to write into
+	 * @param playerID Player's ID
+	 * @param slot Player's slot
+	 */
+	static void writeRemoved( ByteBuffer buf, long playerID, int slot )
+	{
+		buf.putShort( (short) slot );
+		buf.put( (byte) Protocol.REMOVED );
+		// Slot may already be reused by another player, so removal names the player
+		buf.putLong( playerID );
+	}
+}
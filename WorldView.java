@@ -0,0 +1,103 @@
+/**
+ *  Program Name : Tanks
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class WorldView - copy of remote players' states the network thread publishes
+ * for the game. States are kept in arrays indexed by players' slots, so the game
+ * reads them without looking up players' IDs in a map
+ * @author Peter Cross
+ * @version April 5, 2017
+ */
+public class WorldView
+{
+	int version;	// Number of views published before this one
+	int size;		// Number of slots in the view
+	long clockOffset;	// Local time minus server time in milliseconds, both of monotonic clocks
+	boolean authoritative;	// If the server moves tanks by players' inputs
+	int ownSlot;		// Slot of the current player, NO_SLOT until the server tells it
+	int numChanged;		// Number of slots changed since the previous view
+	int[] changed = new int[64];		// Slots changed since the previous view, in order
+
+	long[]  id = new long[64];			// Player's ID or 0 if the slot is free
+	long[]  timestamp = new long[64];	// Time of the snapshot the player last moved in
+	float[] x = new float[64];			// X coordinate
+	float[] y = new float[64];			// Y coordinate
+	float[] r = new float[64];			// Rotation
+	float[] d = new float[64];			// Direction
+	float[] s = new float[64];			// Speed
+	int[]   c = new int[64];			// Color
+	int[]   input = new int[64];		// Sequence number of player's last input the server applied
+
+	/**
+	 * Copies states of players into the view
+	 * @param slots Players' states by slots, null for free slots
+	 * @param version Number of views published before this one
+	 * @param clockOffset Local time minus server's time in milliseconds
+	 * @param authoritative If the server moves tanks by players' inputs
+	 * @param ownSlot Slot of the current player
+	 * @param changedSlots Slots changed since the previous view
+	 */
+	void copy( ClientExchange.RemoteState[] slots, int version, long clockOffset, boolean authoritative,
+			   int ownSlot, BitSet changedSlots )
+	{
+		if ( slots.length > id.length )
+			grow( slots.length );
+
+		this.version = version;
+		this.clockOffset = clockOffset;
+		this.authoritative = authoritative;
+		this.ownSlot = ownSlot;
+		size = slots.length;
+		numChanged = 0;
+
+		for ( int i = changedSlots.nextSetBit( 0 ); i >= 0; i = changedSlots.nextSetBit( i + 1 ) )
+		{
+			if ( numChanged == changed.length )
+				changed = Arrays.copyOf( changed, 2 * changed.length );
+
+			changed[numChanged++] = i;
+		}
+
+		for ( int i = 0; i < size; i++ )
+		{
+			ClientExchange.RemoteState st = slots[i];
+
+			if ( st == null )
+			{
+				id[i] = 0;
+				continue;
+			}
+
+			id[i] = st.id;
+			timestamp[i] = st.timestamp;
+			x[i] = st.x;
+			y[i] = st.y;
+			r[i] = st.r;
+			d[i] = st.d;
+			s[i] = st.s;
+			c[i] = st.c;
+			input[i] = st.input;
+		}
+	}
+
+	/**
+	 * Grows arrays of the view
+	 * @param capacity New number of slots
+	 */
+	private void grow( int capacity )
+	{
+		id = Arrays.copyOf( id, capacity );
+		timestamp = Arrays.copyOf( timestamp, capacity );
+		x = Arrays.copyOf( x, capacity );
+		y = Arrays.copyOf( y, capacity );
+		r = Arrays.copyOf( r, capacity );
+		d = Arrays.copyOf( d, capacity );
+		s = Arrays.copyOf( s, capacity );
+		c = Arrays.copyOf( c, capacity );
+		input = Arrays.copyOf( input, capacity );
+	}
+}